@@ -4,12 +4,14 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * 算命網站後端主應用程式
  * 支援獨立運行和Tomcat部署
  */
 @SpringBootApplication
+@EnableScheduling
 public class FateCompassApplication extends SpringBootServletInitializer {
 
     public static void main(String[] args) {
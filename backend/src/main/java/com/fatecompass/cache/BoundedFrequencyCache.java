@@ -0,0 +1,327 @@
+package com.fatecompass.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 有界並發緩存
+ * 以 ConcurrentHashMap 存放資料，超過上限時以帶存取頻率的 CLOCK 演算法淘汰：
+ * 候選項目若仍有存取頻率會減一後放回佇列，頻率歸零者才被淘汰，
+ * 因此熱門資料不會被一次性的大量新資料擠出。可選擇設定寫入後過期時間。
+ * get 的 loader 在鎖外執行；載入期間同一鍵（所在分段）被 invalidate 時，載入的值不會留在緩存，
+ * 避免讀到更新前資料的載入在失效之後寫回舊值。
+ *
+ * @param <K> 鍵類型
+ * @param <V> 值類型
+ */
+public class BoundedFrequencyCache<K, V> {
+
+    private static final int MAX_FREQUENCY = 15;
+
+    // 失效世代的分段數（2 的次方），依鍵雜湊分段，不必為每個鍵保留世代
+    private static final int GENERATION_STRIPES = 64;
+
+    private final ConcurrentHashMap<K, Node<V>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<K> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger clockLength = new AtomicInteger();
+    private final AtomicBoolean purging = new AtomicBoolean();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private final int maximumSize;
+    private final long expireAfterWriteNanos;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param maximumSize      最大項目數
+     * @param expireAfterWrite 寫入後過期時間，null 或 0 表示不過期
+     */
+    public BoundedFrequencyCache(int maximumSize, Duration expireAfterWrite) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("緩存上限必須大於0");
+        }
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteNanos = expireAfterWrite == null ? 0 : expireAfterWrite.toNanos();
+    }
+
+    /**
+     * 查詢緩存，不存在或已過期時回傳 null
+     */
+    public V getIfPresent(K key) {
+        Node<V> node = entries.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        if (isExpired(node)) {
+            if (entries.remove(key, node)) {
+                size.decrementAndGet();
+            }
+            missCount.increment();
+            return null;
+        }
+        node.touch();
+        hitCount.increment();
+        return node.value;
+    }
+
+    /**
+     * 讀取緩存，不存在時以 loader 載入並寫入；loader 回傳 null 時不緩存。
+     * 已有其他執行緒寫入的值不會被覆蓋；載入期間發生 invalidate 時載入的值只回傳、不緩存
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        int stripe = stripe(key);
+        long generation = generations.get(stripe);
+        value = loader.apply(key);
+        if (value != null) {
+            Node<V> node = new Node<>(value, System.nanoTime());
+            // 先寫入再檢查世代：invalidate 先遞增世代再移除，兩者交錯時總有一方會移除這個值
+            if (insert(key, node, true) && generations.get(stripe) != generation && entries.remove(key, node)) {
+                size.decrementAndGet();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 寫入緩存
+     */
+    public void put(K key, V value) {
+        insert(key, new Node<>(value, System.nanoTime()), false);
+    }
+
+    /**
+     * 移除單一項目，並讓進行中的載入不寫回
+     */
+    public void invalidate(K key) {
+        generations.incrementAndGet(stripe(key));
+        if (entries.remove(key) != null) {
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * 清空緩存（不重置統計）
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        entries.clear();
+        clock.clear();
+        clockLength.set(0);
+        size.set(0);
+    }
+
+    /**
+     * 走訪所有未過期的項目
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        entries.forEach((key, node) -> {
+            if (!isExpired(node)) {
+                action.accept(key, node.value);
+            }
+        });
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * 獲取命中、未命中、淘汰統計
+     */
+    public CacheStats stats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), size());
+    }
+
+    /**
+     * 註冊 Micrometer 指標：cache.gets{result=hit|miss}、cache.evictions、cache.size
+     */
+    public void bindTo(MeterRegistry registry, String cacheName) {
+        FunctionCounter.builder("cache.gets", hitCount, LongAdder::sum)
+                .tag("cache", cacheName).tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", missCount, LongAdder::sum)
+                .tag("cache", cacheName).tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", evictionCount, LongAdder::sum)
+                .tag("cache", cacheName)
+                .register(registry);
+        Gauge.builder("cache.size", size, AtomicInteger::get)
+                .tag("cache", cacheName)
+                .register(registry);
+    }
+
+    /**
+     * @param onlyIfAbsent 鍵已存在時不覆蓋
+     * @return 是否已寫入
+     */
+    private boolean insert(K key, Node<V> node, boolean onlyIfAbsent) {
+        Node<V> previous = onlyIfAbsent ? entries.putIfAbsent(key, node) : entries.put(key, node);
+        if (previous != null) {
+            return !onlyIfAbsent;
+        }
+        clock.offer(key);
+        if (clockLength.incrementAndGet() > maximumSize * 2) {
+            purgeClock();
+        }
+        if (size.incrementAndGet() > maximumSize) {
+            evict();
+        }
+        return true;
+    }
+
+    private static int stripe(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    private void evict() {
+        while (size.get() > maximumSize) {
+            K candidate = clock.poll();
+            if (candidate == null) {
+                return;
+            }
+            clockLength.decrementAndGet();
+            Node<V> node = entries.get(candidate);
+            if (node == null) {
+                // 已被移除的舊鍵
+                continue;
+            }
+            if (!isExpired(node) && node.cool()) {
+                // 仍有存取頻率，給予再一次機會
+                clock.offer(candidate);
+                clockLength.incrementAndGet();
+                continue;
+            }
+            if (entries.remove(candidate, node)) {
+                size.decrementAndGet();
+                evictionCount.increment();
+            }
+        }
+    }
+
+    /**
+     * 清除佇列中已失效或重複的鍵，避免反覆 invalidate/put 時佇列無限增長
+     */
+    private void purgeClock() {
+        if (!purging.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Set<K> seen = new HashSet<>();
+            clock.removeIf(key -> !entries.containsKey(key) || !seen.add(key));
+            clockLength.set(seen.size());
+        } finally {
+            purging.set(false);
+        }
+    }
+
+    private boolean isExpired(Node<V> node) {
+        return expireAfterWriteNanos > 0 && System.nanoTime() - node.writeTime > expireAfterWriteNanos;
+    }
+
+    private static final class Node<V> {
+        private final V value;
+        private final long writeTime;
+        private volatile int frequency;
+
+        private Node(V value, long writeTime) {
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+
+        private void touch() {
+            // 近似計數即可，競爭下少記幾次不影響淘汰品質
+            int current = frequency;
+            if (current < MAX_FREQUENCY) {
+                frequency = current + 1;
+            }
+        }
+
+        /**
+         * 頻率減一，回傳減少前是否仍有存取紀錄
+         */
+        private boolean cool() {
+            int current = frequency;
+            if (current > 0) {
+                frequency = current - 1;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 緩存統計快照
+     */
+    public static final class CacheStats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long size;
+
+        public CacheStats(long hitCount, long missCount, long evictionCount, long size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 1.0 : (double) hitCount / requests;
+        }
+
+        public Map<String, Object> toMap() {
+            return Map.of(
+                    "hitCount", hitCount,
+                    "missCount", missCount,
+                    "evictionCount", evictionCount,
+                    "size", size,
+                    "hitRate", Math.round(getHitRate() * 10000.0) / 10000.0);
+        }
+    }
+}
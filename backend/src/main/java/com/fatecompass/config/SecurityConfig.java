@@ -8,6 +8,7 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.expression.WebExpressionAuthorizationManager;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -39,7 +40,10 @@ public class SecurityConfig {
             .authorizeHttpRequests(authz -> authz
                 .requestMatchers("/user/register", "/user/login", "/user/check-username/**", "/user/check-email/**").permitAll()
                 .requestMatchers("/fortune/zodiac-list").permitAll()
-                .requestMatchers("/actuator/**").permitAll()
+                .requestMatchers("/actuator/health/**", "/actuator/info").permitAll()
+                // 其餘監控端點（metrics 等）只允許本機存取
+                .requestMatchers("/actuator/**").access(
+                    new WebExpressionAuthorizationManager("hasIpAddress('127.0.0.1') or hasIpAddress('::1')"))
                 .requestMatchers("/h2-console/**").permitAll()  // 允許H2控制台訪問
                 .anyRequest().permitAll()  // 暫時允許所有請求，實際應用中應該加強安全性
             );
@@ -0,0 +1,48 @@
+package com.fatecompass.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 預先序列化的 JSON 回應
+ * 內容固定的端點只在資料變動時序列化一次，請求時直接寫出 byte[]。
+ * ETag 取內容 SHA-256 的前 16 位元組（強 ETag）；If-None-Match 相符時
+ * 由 Spring 的 ResponseEntity 處理回 304，不寫出本文。
+ */
+final class CachedJsonResponse {
+
+    private final byte[] body;
+    private final String eTag;
+
+    private CachedJsonResponse(byte[] body, String eTag) {
+        this.body = body;
+        this.eTag = eTag;
+    }
+
+    static CachedJsonResponse of(ObjectMapper objectMapper, Object value) {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(value);
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return new CachedJsonResponse(body, "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"");
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("回應序列化失敗: " + e.getMessage(), e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    ResponseEntity<byte[]> toResponse(CacheControl cacheControl) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .body(body);
+    }
+}
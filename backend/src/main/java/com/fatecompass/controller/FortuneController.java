@@ -2,18 +2,33 @@ package com.fatecompass.controller;
 
 import com.fatecompass.entity.FortuneHistory;
 import com.fatecompass.entity.User;
+import com.fatecompass.service.DailyFortuneService;
+import com.fatecompass.service.FortuneHistoryExporter;
 import com.fatecompass.service.FortuneService;
+import com.fatecompass.service.NameFortuneBatchService;
+import com.fatecompass.service.SexagenaryCalendar;
 import com.fatecompass.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 算命控制器 - 處理算命相關請求
@@ -29,6 +44,60 @@ public class FortuneController {
     @Autowired
     private UserService userService;
     
+    @Autowired
+    private FortuneHistoryExporter fortuneHistoryExporter;
+    
+    @Autowired
+    private NameFortuneBatchService nameFortuneBatchService;
+    
+    @Autowired
+    private DailyFortuneService dailyFortuneService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    private static final String[] ZODIACS = {"鼠", "牛", "虎", "兔", "龍", "蛇", "馬", "羊", "猴", "雞", "狗", "豬"};
+    
+    private CachedJsonResponse zodiacList;
+    
+    private final AtomicReference<DailyBodies> dailyBodies = new AtomicReference<>();
+    
+    /**
+     * 單日快照的預先序列化回應：十二生肖全部，以及各生肖單獨的回應
+     */
+    private static final class DailyBodies {
+        private final DailyFortuneService.Snapshot snapshot;
+        private final CachedJsonResponse all;
+        private final Map<String, CachedJsonResponse> byZodiac = new HashMap<>();
+        
+        DailyBodies(DailyFortuneService.Snapshot snapshot, ObjectMapper objectMapper) {
+            this.snapshot = snapshot;
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "每日運勢查詢完成");
+            response.put("date", snapshot.getDate().toString());
+            response.put("fortunes", snapshot.getFortunes());
+            this.all = CachedJsonResponse.of(objectMapper, response);
+            
+            snapshot.getFortunes().forEach((zodiac, fortune) -> {
+                Map<String, Object> single = new HashMap<>();
+                single.put("success", true);
+                single.put("message", "每日運勢查詢完成");
+                single.putAll(fortune);
+                byZodiac.put(zodiac, CachedJsonResponse.of(objectMapper, single));
+            });
+        }
+    }
+    
+    @PostConstruct
+    public void initCachedResponses() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("zodiacs", ZODIACS);
+        zodiacList = CachedJsonResponse.of(objectMapper, response);
+    }
+    
     /**
      * 生辰八字算命
      */
@@ -62,6 +131,13 @@ public class FortuneController {
                 return ResponseEntity.badRequest().body(response);
             }
             
+            // 干支節氣表只涵蓋 1900~2100 年
+            if (!SexagenaryCalendar.supports(birthDateTime)) {
+                response.put("success", false);
+                response.put("message", "出生年份須介於" + SexagenaryCalendar.MIN_YEAR + "至" + SexagenaryCalendar.MAX_YEAR + "年之間");
+                return ResponseEntity.badRequest().body(response);
+            }
+            
             // 執行八字算命
             Map<String, Object> result = fortuneService.calculateBaZi(userOpt.get(), birthDateTime, birthPlace);
             
@@ -119,12 +195,113 @@ public class FortuneController {
         }
     }
     
+    /**
+     * 批次姓名算命
+     * 請求：{"userId": 1, "names": ["王小明", ...]}
+     * 回應：application/x-ndjson，每完成一個姓名輸出一行（依完成順序，以 index 對應輸入位置）
+     */
+    @PostMapping("/name/batch")
+    public ResponseEntity<StreamingResponseBody> calculateNameFortuneBatch(@RequestBody Map<String, Object> request) {
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            Long userId = Long.valueOf(request.get("userId").toString());
+            Object namesValue = request.get("names");
+            
+            if (!(namesValue instanceof List) || ((List<?>) namesValue).isEmpty()) {
+                response.put("success", false);
+                response.put("message", "請輸入姓名列表");
+                return badRequest(response);
+            }
+            
+            List<String> names = new ArrayList<>();
+            for (Object name : (List<?>) namesValue) {
+                names.add(name == null ? null : name.toString());
+            }
+            if (names.size() > nameFortuneBatchService.getMaxNames()) {
+                response.put("success", false);
+                response.put("message", "單次最多 " + nameFortuneBatchService.getMaxNames() + " 個姓名");
+                return badRequest(response);
+            }
+            
+            // 驗證用戶（整批只驗證一次）
+            Optional<User> userOpt = userService.findById(userId);
+            if (!userOpt.isPresent()) {
+                response.put("success", false);
+                response.put("message", "用戶不存在");
+                return badRequest(response);
+            }
+            
+            StreamingResponseBody body = out -> {
+                try {
+                    nameFortuneBatchService.evaluate(names, result -> writeLine(out, result));
+                } catch (RuntimeException e) {
+                    // 回應已開始輸出，以最後一行回報錯誤
+                    Map<String, Object> error = new HashMap<>();
+                    error.put("success", false);
+                    error.put("message", "算命失敗：" + e.getMessage());
+                    writeLine(out, error);
+                }
+            };
+            
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(body);
+            
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "算命失敗：" + e.getMessage());
+            return badRequest(response);
+        }
+    }
+    
+    /**
+     * 目前快照對應的預先序列化回應；快照更換（跨日或文案模板重新載入）後重建
+     */
+    private DailyBodies dailyBodies() {
+        DailyFortuneService.Snapshot snapshot = dailyFortuneService.getSnapshot();
+        DailyBodies bodies = dailyBodies.get();
+        if (bodies == null || bodies.snapshot != snapshot) {
+            bodies = new DailyBodies(snapshot, objectMapper);
+            dailyBodies.set(bodies);
+        }
+        return bodies;
+    }
+    
+    private CacheControl untilNextDay() {
+        return CacheControl.maxAge(dailyFortuneService.untilNextDay());
+    }
+    
+    /**
+     * 串流端點的錯誤回應，格式與其他端點相同
+     */
+    private ResponseEntity<StreamingResponseBody> badRequest(Map<String, Object> response) {
+        return ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> out.write(objectMapper.writeValueAsBytes(response)));
+    }
+    
+    private void writeLine(OutputStream out, Map<String, Object> result) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(result));
+        out.write('\n');
+        out.flush();
+    }
+    
+    /**
+     * 十二生肖今日運勢（預先序列化，支援 ETag / If-None-Match，快取到當地午夜）
+     */
+    @GetMapping("/daily/all")
+    public ResponseEntity<byte[]> getAllDailyFortunes() {
+        return dailyBodies().all.toResponse(untilNextDay().cachePublic());
+    }
+    
     /**
      * 每日運勢查詢
+     * 本文與用戶無關，直接使用預先序列化的結果；路徑含用戶ID，僅允許瀏覽器私有快取
      */
     @GetMapping("/daily/{userId}/{zodiac}")
-    public ResponseEntity<Map<String, Object>> getDailyFortune(@PathVariable Long userId, 
-                                                              @PathVariable String zodiac) {
+    public ResponseEntity<?> getDailyFortune(@PathVariable Long userId, 
+                                             @PathVariable String zodiac) {
         Map<String, Object> response = new HashMap<>();
         
         try {
@@ -136,14 +313,10 @@ public class FortuneController {
                 return ResponseEntity.badRequest().body(response);
             }
             
-            // 執行每日運勢查詢
-            Map<String, Object> result = fortuneService.getDailyFortune(userOpt.get(), zodiac);
+            // 執行每日運勢查詢（驗證生肖）
+            fortuneService.getDailyFortune(userOpt.get(), zodiac);
             
-            response.put("success", true);
-            response.put("message", "每日運勢查詢完成");
-            response.putAll(result);
-            
-            return ResponseEntity.ok(response);
+            return dailyBodies().byZodiac.get(zodiac).toResponse(untilNextDay().cachePrivate());
             
         } catch (Exception e) {
             response.put("success", false);
@@ -153,10 +326,12 @@ public class FortuneController {
     }
     
     /**
-     * 獲取用戶算命歷史記錄
+     * 獲取用戶算命歷史記錄（依時間新到舊分頁，以回傳的 nextCursor 取下一頁）
      */
     @GetMapping("/history/{userId}")
-    public ResponseEntity<Map<String, Object>> getFortuneHistory(@PathVariable Long userId) {
+    public ResponseEntity<Map<String, Object>> getFortuneHistory(@PathVariable Long userId,
+                                                                @RequestParam(required = false) String cursor,
+                                                                @RequestParam(defaultValue = "20") int size) {
         Map<String, Object> response = new HashMap<>();
         
         try {
@@ -168,13 +343,12 @@ public class FortuneController {
                 return ResponseEntity.badRequest().body(response);
             }
             
-            // 獲取算命歷史
-            List<FortuneHistory> histories = fortuneService.getUserFortuneHistory(userId);
+            // 獲取算命歷史（單頁）
+            Map<String, Object> page = fortuneService.getUserFortuneHistoryPage(userId, cursor, size);
             
             response.put("success", true);
             response.put("message", "獲取歷史記錄成功");
-            response.put("histories", histories);
-            response.put("total", histories.size());
+            response.putAll(page);
             
             return ResponseEntity.ok(response);
             
@@ -186,18 +360,72 @@ public class FortuneController {
     }
     
     /**
-     * 獲取支援的生肖列表
+     * 匯出用戶全部算命歷史（個資查閱、資料可攜與分析用）
+     * format=ndjson（預設）或 csv；逐列串流輸出，不在記憶體中累積整份歷史
      */
-    @GetMapping("/zodiac-list")
-    public ResponseEntity<Map<String, Object>> getZodiacList() {
+    @GetMapping("/history/{userId}/export")
+    public ResponseEntity<StreamingResponseBody> exportFortuneHistory(@PathVariable Long userId,
+                                                                      @RequestParam(defaultValue = "ndjson") String format) {
         Map<String, Object> response = new HashMap<>();
         
-        String[] zodiacs = {"鼠", "牛", "虎", "兔", "龍", "蛇", "馬", "羊", "猴", "雞", "狗", "豬"};
-        
-        response.put("success", true);
-        response.put("zodiacs", zodiacs);
+        try {
+            FortuneHistoryExporter.Format exportFormat = FortuneHistoryExporter.Format.of(format);
+            
+            // 驗證用戶
+            Optional<User> userOpt = userService.findById(userId);
+            if (!userOpt.isPresent()) {
+                response.put("success", false);
+                response.put("message", "用戶不存在");
+                return badRequest(response);
+            }
+            
+            StreamingResponseBody body = out -> fortuneHistoryExporter.export(userId, exportFormat, out);
+            
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(exportFormat.getContentType() + ";charset=UTF-8"))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                            .filename("fortune-history-" + userId + "." + exportFormat.getExtension())
+                            .build().toString())
+                    .cacheControl(CacheControl.noStore())
+                    .body(body);
+            
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "匯出歷史記錄失敗：" + e.getMessage());
+            return badRequest(response);
+        }
+    }
+    
+    /**
+     * 單筆算命歷史詳情（含完整分析內容）
+     */
+    @GetMapping("/history/{userId}/{historyId}")
+    public ResponseEntity<Map<String, Object>> getFortuneHistoryDetail(@PathVariable Long userId,
+                                                                      @PathVariable Long historyId) {
+        Map<String, Object> response = new HashMap<>();
         
-        return ResponseEntity.ok(response);
+        try {
+            FortuneHistory history = fortuneService.getFortuneHistoryDetail(userId, historyId);
+            
+            response.put("success", true);
+            response.put("message", "獲取歷史記錄成功");
+            response.put("history", history);
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "獲取歷史記錄失敗：" + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    /**
+     * 獲取支援的生肖列表（內容固定，預先序列化）
+     */
+    @GetMapping("/zodiac-list")
+    public ResponseEntity<byte[]> getZodiacList() {
+        return zodiacList.toResponse(untilNextDay().cachePublic());
     }
     
     /**
@@ -216,27 +444,11 @@ public class FortuneController {
                 return ResponseEntity.badRequest().body(response);
             }
             
-            // 獲取算命歷史進行統計
-            List<FortuneHistory> histories = fortuneService.getUserFortuneHistory(userId);
-            
-            // 統計各類型算命次數
-            Map<String, Integer> typeCount = new HashMap<>();
-            int totalScore = 0;
-            
-            for (FortuneHistory history : histories) {
-                String type = history.getFortuneType().getDescription();
-                typeCount.put(type, typeCount.getOrDefault(type, 0) + 1);
-                if (history.getScore() != null) {
-                    totalScore += history.getScore();
-                }
-            }
-            
-            double averageScore = histories.isEmpty() ? 0 : (double) totalScore / histories.size();
+            // 統計讀取用戶計數列（主鍵單列查詢），不載入個別記錄
+            Map<String, Object> stats = fortuneService.getUserFortuneStats(userId);
             
             response.put("success", true);
-            response.put("totalCount", histories.size());
-            response.put("typeCount", typeCount);
-            response.put("averageScore", Math.round(averageScore * 100.0) / 100.0);
+            response.putAll(stats);
             
             return ResponseEntity.ok(response);
             
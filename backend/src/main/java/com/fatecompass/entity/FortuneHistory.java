@@ -1,5 +1,6 @@
 package com.fatecompass.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import org.hibernate.annotations.CreationTimestamp;
@@ -13,11 +14,17 @@ import java.time.LocalDateTime;
 @Table(name = "FC_FORTUNE_HISTORY")
 public class FortuneHistory {
     
+    // 每次向 FC_FORTUNE_SEQ 取號保留的ID數，須與序列的 INCREMENT BY 相同
+    public static final int ID_ALLOCATION_SIZE = 50;
+    
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "fortune_seq")
+    @SequenceGenerator(name = "fortune_seq", sequenceName = "FC_FORTUNE_SEQ", allocationSize = ID_ALLOCATION_SIZE)
     @Column(name = "HISTORY_ID")
     private Long historyId;
     
+    // 不輸出用戶（避免與 User.fortuneHistories 互相遞迴及洩漏密碼雜湊）
+    @JsonIgnore
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "USER_ID", nullable = false)
     private User user;
@@ -30,6 +37,7 @@ public class FortuneHistory {
     @Column(name = "INPUT_DATA", length = 1000)
     private String inputData;
     
+    // 應用程式寫入的是 FortuneResultCode 精簡編碼，讀取詳情時才渲染成文字；舊記錄為全文
     @Column(name = "RESULT_DATA", length = 2000)
     private String resultData;
     
@@ -39,8 +47,9 @@ public class FortuneHistory {
     @Column(name = "ANALYSIS", length = 2000)
     private String analysis;
     
+    // 歷史表依此欄位按月分區，不可為空
     @CreationTimestamp
-    @Column(name = "CREATED_AT", updatable = false)
+    @Column(name = "CREATED_AT", nullable = false, updatable = false)
     private LocalDateTime createdAt;
     
     // 枚舉：算命類型
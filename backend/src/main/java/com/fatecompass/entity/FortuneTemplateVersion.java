@@ -0,0 +1,78 @@
+package com.fatecompass.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+/**
+ * 已發布的文案模板版本實體類（FC_FORTUNE_TEMPLATE_VERSION）
+ * 主鍵為模板組的內容指紋（與結果編碼中的指紋相同），由應用指定；
+ * 內容與 fortune/templates.json 同格式，只含該組的類別。記錄只新增、不修改，
+ * 舊歷史記錄依其編碼中的指紋取回當時的模板渲染
+ */
+@Entity
+@Table(name = "FC_FORTUNE_TEMPLATE_VERSION")
+public class FortuneTemplateVersion implements Persistable<Integer> {
+    
+    @Id
+    @Column(name = "FINGERPRINT")
+    private Integer fingerprint;
+    
+    @Column(name = "TEMPLATE_GROUP", nullable = false, length = 20)
+    private String templateGroup;
+    
+    @Lob
+    @Column(name = "TEMPLATES", nullable = false)
+    private String templates;
+    
+    @CreationTimestamp
+    @Column(name = "CREATED_AT", updatable = false)
+    private LocalDateTime createdAt;
+    
+    @Transient
+    private boolean isNew = true;
+    
+    // 構造函數
+    public FortuneTemplateVersion() {}
+    
+    public FortuneTemplateVersion(Integer fingerprint, String templateGroup, String templates) {
+        this.fingerprint = fingerprint;
+        this.templateGroup = templateGroup;
+        this.templates = templates;
+    }
+    
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+    
+    @Override
+    public Integer getId() {
+        return fingerprint;
+    }
+    
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+    
+    // Getter方法（記錄不可修改）
+    public Integer getFingerprint() {
+        return fingerprint;
+    }
+    
+    public String getTemplateGroup() {
+        return templateGroup;
+    }
+    
+    public String getTemplates() {
+        return templates;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,76 @@
+package com.fatecompass.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+/**
+ * 共享筆劃緩存實體類（FC_STROKE_CACHE）
+ * 主鍵為字的Unicode碼位，由應用指定；實作Persistable讓新建的記錄直接INSERT，
+ * 不必先SELECT判斷是否存在
+ */
+@Entity
+@Table(name = "FC_STROKE_CACHE")
+public class StrokeCacheEntry implements Persistable<Integer> {
+    
+    @Id
+    @Column(name = "CHAR_CODE")
+    private Integer charCode;
+    
+    @Column(name = "STROKES", nullable = false)
+    private Integer strokes;
+    
+    @CreationTimestamp
+    @Column(name = "CREATED_AT", updatable = false)
+    private LocalDateTime createdAt;
+    
+    @Transient
+    private boolean isNew = true;
+    
+    // 構造函數
+    public StrokeCacheEntry() {}
+    
+    public StrokeCacheEntry(Integer charCode, Integer strokes) {
+        this.charCode = charCode;
+        this.strokes = strokes;
+    }
+    
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+    
+    @Override
+    public Integer getId() {
+        return charCode;
+    }
+    
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+    
+    // Getter和Setter方法
+    public Integer getCharCode() {
+        return charCode;
+    }
+    
+    public void setCharCode(Integer charCode) {
+        this.charCode = charCode;
+    }
+    
+    public Integer getStrokes() {
+        return strokes;
+    }
+    
+    public void setStrokes(Integer strokes) {
+        this.strokes = strokes;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
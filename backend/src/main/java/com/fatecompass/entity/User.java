@@ -17,11 +17,12 @@ import java.util.List;
 @Table(name = "FC_USERS")
 public class User {
     
+    // 每次向 FC_USER_SEQ 取號保留的ID數，須與序列的 INCREMENT BY 相同
+    public static final int ID_ALLOCATION_SIZE = 20;
+    
     @Id
-    @GeneratedValue(strategy = GenerationType.TABLE, generator = "user_generator")
-    @TableGenerator(name = "user_generator", table = "FC_ID_GENERATOR",
-                   pkColumnName = "GEN_NAME", valueColumnName = "GEN_VAL",
-                   pkColumnValue = "user", initialValue = 1, allocationSize = 1)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_seq")
+    @SequenceGenerator(name = "user_seq", sequenceName = "FC_USER_SEQ", allocationSize = ID_ALLOCATION_SIZE)
     @Column(name = "USER_ID")
     private Long userId;
     
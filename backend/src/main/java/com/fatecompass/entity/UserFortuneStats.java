@@ -0,0 +1,132 @@
+package com.fatecompass.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * 用戶算命統計實體類（FC_USER_FORTUNE_STATS）
+ * 每位用戶一列累計計數，由 FortuneHistoryWriter 在寫入歷史的同一交易中以 MERGE 累加；
+ * 應用程式只讀取，不經由 JPA 寫入
+ */
+@Entity
+@Table(name = "FC_USER_FORTUNE_STATS")
+public class UserFortuneStats {
+
+    @Id
+    @Column(name = "USER_ID")
+    private Long userId;
+
+    @Column(name = "BAZI_COUNT", nullable = false)
+    private long baziCount;
+
+    @Column(name = "NAME_COUNT", nullable = false)
+    private long nameCount;
+
+    @Column(name = "DAILY_COUNT", nullable = false)
+    private long dailyCount;
+
+    @Column(name = "ZODIAC_COUNT", nullable = false)
+    private long zodiacCount;
+
+    @Column(name = "TOTAL_COUNT", nullable = false)
+    private long totalCount;
+
+    @Column(name = "SCORE_SUM", nullable = false)
+    private long scoreSum;
+
+    @Column(name = "LAST_FORTUNE_AT")
+    private LocalDateTime lastFortuneAt;
+
+    @Column(name = "UPDATED_AT")
+    private LocalDateTime updatedAt;
+
+    // 構造函數
+    public UserFortuneStats() {}
+
+    /**
+     * 指定算命類型的累計次數
+     */
+    public long getCount(FortuneHistory.FortuneType fortuneType) {
+        switch (fortuneType) {
+            case BAZI: return baziCount;
+            case NAME: return nameCount;
+            case DAILY: return dailyCount;
+            case ZODIAC: return zodiacCount;
+            default: return 0;
+        }
+    }
+
+    // Getter和Setter方法
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public long getBaziCount() {
+        return baziCount;
+    }
+
+    public void setBaziCount(long baziCount) {
+        this.baziCount = baziCount;
+    }
+
+    public long getNameCount() {
+        return nameCount;
+    }
+
+    public void setNameCount(long nameCount) {
+        this.nameCount = nameCount;
+    }
+
+    public long getDailyCount() {
+        return dailyCount;
+    }
+
+    public void setDailyCount(long dailyCount) {
+        this.dailyCount = dailyCount;
+    }
+
+    public long getZodiacCount() {
+        return zodiacCount;
+    }
+
+    public void setZodiacCount(long zodiacCount) {
+        this.zodiacCount = zodiacCount;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(long totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    public long getScoreSum() {
+        return scoreSum;
+    }
+
+    public void setScoreSum(long scoreSum) {
+        this.scoreSum = scoreSum;
+    }
+
+    public LocalDateTime getLastFortuneAt() {
+        return lastFortuneAt;
+    }
+
+    public void setLastFortuneAt(LocalDateTime lastFortuneAt) {
+        this.lastFortuneAt = lastFortuneAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -2,6 +2,7 @@ package com.fatecompass.repository;
 
 import com.fatecompass.entity.FortuneHistory;
 import com.fatecompass.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -9,6 +10,7 @@ import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * 算命歷史資料存取層
@@ -22,10 +24,30 @@ public interface FortuneHistoryRepository extends JpaRepository<FortuneHistory,
     List<FortuneHistory> findByUserOrderByCreatedAtDesc(User user);
     
     /**
-     * 根據用戶ID查找算命歷史
+     * 用戶算命歷史第一頁摘要（依時間新到舊，同時間以ID排序）
      */
-    @Query("SELECT fh FROM FortuneHistory fh WHERE fh.user.userId = :userId ORDER BY fh.createdAt DESC")
-    List<FortuneHistory> findByUserIdOrderByCreatedAtDesc(@Param("userId") Long userId);
+    @Query("SELECT fh.historyId AS historyId, fh.fortuneType AS fortuneType, fh.score AS score, fh.createdAt AS createdAt "
+            + "FROM FortuneHistory fh WHERE fh.user.userId = :userId "
+            + "ORDER BY fh.createdAt DESC, fh.historyId DESC")
+    List<FortuneHistorySummary> findFirstPageByUserId(@Param("userId") Long userId, Limit limit);
+    
+    /**
+     * 用戶算命歷史下一頁摘要：從游標 (createdAt, historyId) 之後開始（keyset 分頁，不使用 OFFSET）
+     */
+    @Query("SELECT fh.historyId AS historyId, fh.fortuneType AS fortuneType, fh.score AS score, fh.createdAt AS createdAt "
+            + "FROM FortuneHistory fh WHERE fh.user.userId = :userId "
+            + "AND (fh.createdAt < :createdAt OR (fh.createdAt = :createdAt AND fh.historyId < :historyId)) "
+            + "ORDER BY fh.createdAt DESC, fh.historyId DESC")
+    List<FortuneHistorySummary> findPageByUserIdAfter(@Param("userId") Long userId,
+                                               @Param("createdAt") LocalDateTime createdAt,
+                                               @Param("historyId") Long historyId,
+                                               Limit limit);
+    
+    /**
+     * 單筆算命歷史（含完整結果），限定屬於該用戶
+     */
+    @Query("SELECT fh FROM FortuneHistory fh WHERE fh.historyId = :historyId AND fh.user.userId = :userId")
+    Optional<FortuneHistory> findDetail(@Param("userId") Long userId, @Param("historyId") Long historyId);
     
     /**
      * 根據算命類型查找歷史記錄
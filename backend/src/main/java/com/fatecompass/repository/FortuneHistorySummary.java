@@ -0,0 +1,25 @@
+package com.fatecompass.repository;
+
+import com.fatecompass.entity.FortuneHistory;
+
+import java.time.LocalDateTime;
+
+/**
+ * 算命歷史摘要投影（列表用）
+ * 只查詢ID、類型、評分與時間，不讀取 RESULT_DATA / ANALYSIS 大欄位，也不碰用戶關聯；
+ * 欄位都在 IDX_FC_FORTUNE_USER_CREATED 中，列表查詢只需掃描索引。
+ */
+public interface FortuneHistorySummary {
+    
+    Long getHistoryId();
+    
+    FortuneHistory.FortuneType getFortuneType();
+    
+    Integer getScore();
+    
+    LocalDateTime getCreatedAt();
+    
+    default String getTypeDescription() {
+        return getFortuneType().getDescription();
+    }
+}
@@ -0,0 +1,19 @@
+package com.fatecompass.repository;
+
+import com.fatecompass.entity.FortuneTemplateVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * 已發布文案模板版本資料存取層
+ */
+@Repository
+public interface FortuneTemplateVersionRepository extends JpaRepository<FortuneTemplateVersion, Integer> {
+    
+    /**
+     * 模板組最早發布的版本（不帶指紋的 v1 編碼以此渲染）
+     */
+    Optional<FortuneTemplateVersion> findFirstByTemplateGroupOrderByCreatedAtAscFingerprintAsc(String templateGroup);
+}
@@ -0,0 +1,20 @@
+package com.fatecompass.repository;
+
+import com.fatecompass.entity.StrokeCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 共享筆劃緩存資料存取層
+ */
+@Repository
+public interface StrokeCacheRepository extends JpaRepository<StrokeCacheEntry, Integer> {
+    
+    /**
+     * 以單次IN查詢取回多個字的筆劃
+     */
+    List<StrokeCacheEntry> findByCharCodeIn(Collection<Integer> charCodes);
+}
@@ -0,0 +1,12 @@
+package com.fatecompass.repository;
+
+import com.fatecompass.entity.UserFortuneStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 用戶算命統計資料存取層（以 USER_ID 主鍵單列讀取）
+ */
+@Repository
+public interface UserFortuneStatsRepository extends JpaRepository<UserFortuneStats, Long> {
+}
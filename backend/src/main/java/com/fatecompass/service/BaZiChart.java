@@ -0,0 +1,91 @@
+package com.fatecompass.service;
+
+import java.util.Map;
+
+/**
+ * 八字命盤（不可變）
+ * 只含由出生時辰決定的部分：四柱序號與文字、生肖、五行統計（含藏干），
+ * 可在所有相同時辰出生的用戶間共用；出生地等個人資料由呼叫端另外加上。
+ */
+public final class BaZiChart {
+
+    private final int yearPillar;
+    private final int monthPillar;
+    private final int dayPillar;
+    private final int hourPillar;
+    // 四柱文字於建立時算好，隨命盤一起共用
+    private final String[] pillarNames;
+    private final String zodiac;
+    private final int[] elementCounts;
+    private final Map<String, Integer> elementCountMap;
+
+    public BaZiChart(int[] pillars, String zodiac) {
+        this.yearPillar = pillars[0];
+        this.monthPillar = pillars[1];
+        this.dayPillar = pillars[2];
+        this.hourPillar = pillars[3];
+        this.pillarNames = new String[pillars.length];
+        for (int i = 0; i < pillars.length; i++) {
+            this.pillarNames[i] = SexagenaryCalendar.name(pillars[i]);
+        }
+        this.zodiac = zodiac;
+        this.elementCounts = FiveElements.tally(pillars);
+        this.elementCountMap = FiveElements.toMap(elementCounts);
+    }
+
+    public int getYearPillar() {
+        return yearPillar;
+    }
+
+    public int getMonthPillar() {
+        return monthPillar;
+    }
+
+    public int getDayPillar() {
+        return dayPillar;
+    }
+
+    public int getHourPillar() {
+        return hourPillar;
+    }
+
+    public String getYearPillarName() {
+        return pillarNames[0];
+    }
+
+    public String getMonthPillarName() {
+        return pillarNames[1];
+    }
+
+    public String getDayPillarName() {
+        return pillarNames[2];
+    }
+
+    public String getHourPillarName() {
+        return pillarNames[3];
+    }
+
+    public String getZodiac() {
+        return zodiac;
+    }
+
+    /**
+     * 單一五行的數量
+     *
+     * @param element FiveElements 的五行序號
+     */
+    public int getElementCount(int element) {
+        return elementCounts[element];
+    }
+
+    public int getDominantElement() {
+        return FiveElements.dominant(elementCounts);
+    }
+
+    /**
+     * 回應用的五行統計（金木水火土順序，不可修改）
+     */
+    public Map<String, Integer> getElementCount() {
+        return elementCountMap;
+    }
+}
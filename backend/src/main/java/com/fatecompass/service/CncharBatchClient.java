@@ -0,0 +1,163 @@
+package com.fatecompass.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * cnchar批次查詢客戶端
+ * 將同時到達、緩存未命中的字集中起來，等待數毫秒或湊滿一批後
+ * 以單次 POST /batch 送出，再用共用回應完成每個等待者的 future。
+ * 同一個字若已在等待或查詢中，後來的請求直接共用同一個 future。
+ */
+@Component
+public class CncharBatchClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(CncharBatchClient.class);
+
+    @Value("${cnchar.batch.max-size:64}")
+    private int maxBatchSize;
+
+    @Value("${cnchar.batch.max-delay-ms:5}")
+    private long maxDelayMillis;
+
+    @Autowired
+    private CncharHttpClient cncharHttpClient;
+
+    // 等待中或查詢中的字（碼位 -> future）
+    private final ConcurrentHashMap<Integer, CompletableFuture<Integer>> inFlight = new ConcurrentHashMap<>();
+
+    private final Object lock = new Object();
+    private List<Integer> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    // 計時送出與實際HTTP呼叫分開，避免重試等待卡住計時器
+    private ScheduledExecutorService scheduler;
+    private ExecutorService sender;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("cnchar-batch-timer-"));
+        sender = Executors.newFixedThreadPool(4, daemonThreads("cnchar-batch-"));
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+        scheduler.shutdown();
+        sender.shutdown();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 查詢單一字的筆劃數，結果會在所屬批次回應後完成
+     *
+     * @param codePoint Unicode碼位
+     * @return 筆劃數的 future
+     */
+    public CompletableFuture<Integer> lookup(int codePoint) {
+        CompletableFuture<Integer> created = new CompletableFuture<>();
+        CompletableFuture<Integer> existing = inFlight.putIfAbsent(codePoint, created);
+        if (existing != null) {
+            return existing;
+        }
+        created.whenComplete((strokes, error) -> inFlight.remove(codePoint, created));
+
+        List<Integer> batch = null;
+        synchronized (lock) {
+            pending.add(codePoint);
+            if (pending.size() >= maxBatchSize) {
+                batch = drainPending();
+            } else if (pending.size() == 1) {
+                scheduledFlush = scheduler.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (batch != null) {
+            dispatch(batch);
+        }
+        return created;
+    }
+
+    /**
+     * 立即送出目前累積的批次
+     */
+    public void flush() {
+        List<Integer> batch;
+        synchronized (lock) {
+            batch = drainPending();
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+    }
+
+    private List<Integer> drainPending() {
+        List<Integer> batch = pending;
+        pending = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(List<Integer> batch) {
+        try {
+            sender.execute(() -> send(batch));
+        } catch (RejectedExecutionException e) {
+            // 關閉中，直接在呼叫執行緒送出
+            send(batch);
+        }
+    }
+
+    private void send(List<Integer> batch) {
+        try {
+            List<String> names = new ArrayList<>(batch.size());
+            for (int codePoint : batch) {
+                names.add(new String(Character.toChars(codePoint)));
+            }
+
+            Map<String, Object> requestBody = new HashMap<>();
+            requestBody.put("names", names);
+
+            JsonNode results = cncharHttpClient.postJson("/batch", requestBody).path("results");
+            for (int i = 0; i < batch.size(); i++) {
+                CompletableFuture<Integer> future = inFlight.get(batch.get(i));
+                if (future != null) {
+                    future.complete(results.path(i).path("totalStrokes").asInt());
+                }
+            }
+            logger.debug("cnchar批次查詢完成: {} 個字", batch.size());
+
+        } catch (RuntimeException e) {
+            logger.error("cnchar批次查詢失敗: {}", e.getMessage());
+            for (int codePoint : batch) {
+                CompletableFuture<Integer> future = inFlight.get(codePoint);
+                if (future != null) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+}
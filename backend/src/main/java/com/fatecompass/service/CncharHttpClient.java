@@ -0,0 +1,288 @@
+package com.fatecompass.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * cnchar微服務HTTP客戶端
+ * 使用JDK HttpClient（keep-alive連接池），並提供：
+ *   - 連接逾時 / 請求逾時（cnchar.service.connect-timeout、cnchar.service.timeout）
+ *   - 帶隨機抖動的指數退避重試（cnchar.service.retry.*），只重試連線錯誤、逾時與5xx；
+ *     重試連同等待不超過 retry.budget-ms，呼叫端執行緒最多被佔用約 max(timeout, budget-ms)
+ *   - 熔斷器：cnchar持續失敗時直接失敗，不佔用Tomcat執行緒等待
+ *   - 可選的對沖請求：主請求超過 hedge.delay-ms 未回應時再送一次，取先回應者
+ */
+@Component
+public class CncharHttpClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(CncharHttpClient.class);
+
+    @Value("${cnchar.service.url:http://localhost:3001}")
+    private String cncharServiceUrl;
+
+    @Value("${cnchar.service.connect-timeout:2000}")
+    private long connectTimeoutMillis;
+
+    @Value("${cnchar.service.timeout:10000}")
+    private long requestTimeoutMillis;
+
+    @Value("${cnchar.service.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${cnchar.service.retry.delay:200}")
+    private long retryDelayMillis;
+
+    @Value("${cnchar.service.retry.budget-ms:3000}")
+    private long retryBudgetMillis;
+
+    @Value("${cnchar.service.circuit-breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${cnchar.service.circuit-breaker.open-duration:30000}")
+    private long openDurationMillis;
+
+    @Value("${cnchar.service.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${cnchar.service.hedge.delay-ms:100}")
+    private long hedgeDelayMillis;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private HttpClient httpClient;
+    private CircuitBreaker circuitBreaker;
+    private Counter retryCounter;
+    private Counter hedgeCounter;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    public void init() {
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .build();
+        circuitBreaker = new CircuitBreaker(failureThreshold, openDurationMillis);
+
+        retryCounter = meterRegistry.counter("cnchar.client.retries");
+        hedgeCounter = meterRegistry.counter("cnchar.client.hedges");
+        rejectedCounter = meterRegistry.counter("cnchar.client.rejected");
+        Gauge.builder("cnchar.client.circuit.open", circuitBreaker,
+                        breaker -> breaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                .register(meterRegistry);
+    }
+
+    /**
+     * GET請求，path中的單一路徑參數會自動編碼
+     */
+    public JsonNode get(String path, String pathVariable) {
+        String encoded = URLEncoder.encode(pathVariable, StandardCharsets.UTF_8);
+        HttpRequest request = newRequest(path + encoded).GET().build();
+        return execute(request);
+    }
+
+    /**
+     * POST JSON請求
+     */
+    public JsonNode postJson(String path, Object body) {
+        try {
+            HttpRequest request = newRequest(path)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+                    .build();
+            return execute(request);
+        } catch (IOException e) {
+            throw new RuntimeException("cnchar請求序列化失敗: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 健康檢查：單次請求、不重試也不受熔斷器限制
+     */
+    public boolean isHealthy() {
+        try {
+            HttpResponse<String> response = httpClient.send(newRequest("/health").GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (IOException e) {
+            logger.warn("cnchar服務健康檢查失敗: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    private HttpRequest.Builder newRequest(String path) {
+        return HttpRequest.newBuilder(URI.create(cncharServiceUrl + path))
+                .timeout(Duration.ofMillis(requestTimeoutMillis));
+    }
+
+    private JsonNode execute(HttpRequest request) {
+        RuntimeException lastFailure = null;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryBudgetMillis);
+
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (!circuitBreaker.tryAcquire()) {
+                rejectedCounter.increment();
+                throw new RuntimeException("cnchar服務暫時不可用（熔斷中）", lastFailure);
+            }
+
+            boolean recorded = false;
+            try {
+                HttpResponse<String> response = send(request);
+                int status = response.statusCode();
+                recorded = true;
+                if (status == 200) {
+                    circuitBreaker.onSuccess();
+                    return objectMapper.readTree(response.body());
+                }
+                if (status < 500) {
+                    // 4xx 是請求本身的問題，不重試也不計入熔斷
+                    circuitBreaker.onSuccess();
+                    throw new RuntimeException("cnchar服務拒絕請求，回應狀態: " + status);
+                }
+                circuitBreaker.onFailure();
+                lastFailure = new RuntimeException("cnchar服務不可用，回應狀態: " + status);
+            } catch (IOException e) {
+                if (!recorded) {
+                    recorded = true;
+                    circuitBreaker.onFailure();
+                }
+                String reason = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                lastFailure = new RuntimeException("無法連接cnchar服務: " + reason, e);
+            } finally {
+                if (!recorded) {
+                    // 中斷等非預期例外：不計成敗，但須釋放 HALF_OPEN 的試探名額，否則熔斷器無法恢復
+                    circuitBreaker.release();
+                }
+            }
+
+            if (attempt == maxAttempts) {
+                break;
+            }
+            long sleepMillis = backoffMillis(attempt);
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) - sleepMillis;
+            if (remainingMillis <= 0) {
+                logger.warn("cnchar請求失敗，已超過重試時間預算: {}", lastFailure.getMessage());
+                break;
+            }
+            retryCounter.increment();
+            logger.warn("cnchar請求失敗，第{}次重試: {}", attempt, lastFailure.getMessage());
+            sleep(sleepMillis);
+            // 重試的逾時不超過剩餘預算
+            if (remainingMillis < requestTimeoutMillis) {
+                request = HttpRequest.newBuilder(request, (name, value) -> true)
+                        .timeout(Duration.ofMillis(remainingMillis))
+                        .build();
+            }
+        }
+
+        throw lastFailure;
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException {
+        try {
+            if (!hedgeEnabled) {
+                return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            }
+            long timeoutMillis = request.timeout().map(Duration::toMillis).orElse(requestTimeoutMillis);
+            return sendHedged(request).get(timeoutMillis + hedgeDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("cnchar請求被中斷", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        } catch (TimeoutException e) {
+            throw new IOException("cnchar請求逾時", e);
+        }
+    }
+
+    /**
+     * 對沖請求：主請求在 hedgeDelay 內未完成時再送出一次，取先成功的回應；
+     * 兩者都失敗才視為失敗
+     */
+    private CompletableFuture<HttpResponse<String>> sendHedged(HttpRequest request) {
+        CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+
+        BiConsumer<HttpResponse<String>, Throwable> handler = (response, error) -> {
+            if (error == null) {
+                result.complete(response);
+            } else if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            }
+        };
+
+        CompletableFuture<HttpResponse<String>> primary =
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        primary.whenComplete(handler);
+
+        CompletableFuture.runAsync(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            outstanding.incrementAndGet();
+            hedgeCounter.increment();
+            CompletableFuture<HttpResponse<String>> hedge =
+                    httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+            hedge.whenComplete(handler);
+            result.whenComplete((response, error) -> hedge.cancel(true));
+        }, CompletableFuture.delayedExecutor(hedgeDelayMillis, TimeUnit.MILLISECONDS));
+
+        result.whenComplete((response, error) -> primary.cancel(true));
+        return result;
+    }
+
+    /**
+     * 指數退避加全抖動：等待 0 ~ delay * 2^(attempt-1) 毫秒
+     */
+    private long backoffMillis(int attempt) {
+        long ceiling = retryDelayMillis << Math.min(attempt - 1, 10);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("cnchar重試等待被中斷", e);
+        }
+    }
+}
@@ -1,34 +1,148 @@
 package com.fatecompass.service;
 
+import com.fatecompass.cache.BoundedFrequencyCache;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * cnchar筆劃計算服務
- * 調用Node.js cnchar微服務獲取準確的繁體中文筆劃數
+ * 可使用內嵌筆劃字典(StrokeDictionary)在本地計算繁體中文筆劃數，
+ * 或交由Node.js cnchar微服務計算，呼叫一律經由CncharHttpClient（連接池、逾時、重試與熔斷）。
+ * 缺字查詢順序：本機緩存 → 跨節點共享緩存(SharedStrokeCache) → cnchar。
+ *
+ * cnchar.stroke.mode:
+ *   local  - 使用內嵌字典（預設），缺字時依 cnchar.stroke.fallback 決定是否查詢cnchar
+ *   remote - 全部交由cnchar微服務計算
+ *   verify - 以內嵌字典結果回應，同時呼叫cnchar比對並記錄差異
+ * 未打包筆劃表（StrokeDictionary 未載入）時 local 與 verify 都等同 remote。
  */
 @Service
 public class CncharStrokeService {
     
     private static final Logger logger = LoggerFactory.getLogger(CncharStrokeService.class);
     
-    @Value("${cnchar.service.url:http://localhost:3001}")
-    private String cncharServiceUrl;
+    private static final String MODE_REMOTE = "remote";
+    private static final String MODE_VERIFY = "verify";
     
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @Value("${cnchar.stroke.mode:local}")
+    private String strokeMode;
     
-    // 筆劃緩存，避免重複調用
-    private final Map<String, Integer> strokeCache = new HashMap<>();
+    @Value("${cnchar.stroke.fallback:true}")
+    private boolean remoteFallback;
+    
+    @Value("${cnchar.service.timeout:10000}")
+    private long serviceTimeoutMillis;
+    
+    @Value("${cnchar.batch.enabled:true}")
+    private boolean batchEnabled;
+    
+    @Value("${cnchar.cache.maximum-size:20000}")
+    private int cacheMaximumSize;
+    
+    @Value("${cnchar.cache.expire-after-write:0s}")
+    private Duration cacheExpireAfterWrite;
+    
+    @Autowired
+    private StrokeDictionary strokeDictionary;
+    
+    @Autowired
+    private CncharHttpClient cncharHttpClient;
+    
+    @Autowired
+    private CncharBatchClient batchClient;
+    
+    @Autowired
+    private SharedStrokeCache sharedStrokeCache;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${cnchar.cache.snapshot.path:}")
+    private String snapshotPath;
+    
+    // 逐字筆劃緩存（鍵為Unicode碼位），避免重複調用
+    private BoundedFrequencyCache<Integer, Integer> strokeCache;
+    
+    // 上次寫出快照後是否學到新字
+    private final AtomicBoolean snapshotDirty = new AtomicBoolean(false);
+    
+    @PostConstruct
+    public void initCache() {
+        strokeCache = new BoundedFrequencyCache<>(cacheMaximumSize, cacheExpireAfterWrite);
+        strokeCache.bindTo(meterRegistry, "cnchar.strokes");
+        loadSnapshot();
+    }
+    
+    /**
+     * 啟動時載入上次寫出的筆劃快照，在readiness探針轉為可用前完成預熱
+     */
+    private void loadSnapshot() {
+        if (snapshotPath.isBlank()) {
+            return;
+        }
+        try {
+            int loaded = StrokeSnapshotFile.read(Path.of(snapshotPath), strokeCache::put);
+            logger.info("已從快照載入 {} 個字的筆劃: {}", loaded, snapshotPath);
+        } catch (IOException e) {
+            logger.warn("載入筆劃快照失敗，以空緩存啟動: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 定期將學到的字→筆劃寫入快照檔，只在有新資料時寫入
+     */
+    @Scheduled(fixedDelayString = "${cnchar.cache.snapshot.interval-ms:300000}",
+               initialDelayString = "${cnchar.cache.snapshot.interval-ms:300000}")
+    public void writeSnapshot() {
+        if (snapshotPath.isBlank() || !snapshotDirty.getAndSet(false)) {
+            return;
+        }
+        
+        Map<Integer, Integer> strokes = new HashMap<>();
+        strokeCache.forEach(strokes::put);
+        try {
+            StrokeSnapshotFile.write(Path.of(snapshotPath), strokes);
+            logger.info("筆劃快照已寫入: {} 個字", strokes.size());
+        } catch (IOException e) {
+            snapshotDirty.set(true);
+            logger.warn("寫入筆劃快照失敗: {}", e.getMessage());
+        }
+    }
+    
+    @PreDestroy
+    public void flushSnapshot() {
+        writeSnapshot();
+    }
+    
+    /**
+     * 寫入緩存並標記快照需要更新
+     */
+    private void rememberStrokes(int codePoint, int strokes) {
+        strokeCache.put(codePoint, strokes);
+        snapshotDirty.set(true);
+    }
     
     /**
      * 計算字符串的總筆劃數
@@ -41,47 +155,265 @@ public class CncharStrokeService {
             return 0;
         }
         
-        // 檢查緩存
-        String cacheKey = text.trim();
-        if (strokeCache.containsKey(cacheKey)) {
-            logger.debug("從緩存獲取筆劃數: {} = {}", cacheKey, strokeCache.get(cacheKey));
-            return strokeCache.get(cacheKey);
+        if (!useDictionary()) {
+            return calculateRemoteTotalStrokes(text);
         }
         
-        try {
-            // 調用cnchar微服務
-            String url = cncharServiceUrl + "/strokes";
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            Map<String, String> requestBody = new HashMap<>();
-            requestBody.put("text", text);
-            
-            HttpEntity<Map<String, String>> request = new HttpEntity<>(requestBody, headers);
-            
-            ResponseEntity<String> response = restTemplate.postForEntity(url, request, String.class);
-            
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                JsonNode jsonNode = objectMapper.readTree(response.getBody());
-                int totalStrokes = jsonNode.get("totalStrokes").asInt();
-                
-                // 緩存結果
-                strokeCache.put(cacheKey, totalStrokes);
+        int localStrokes = calculateLocalTotalStrokes(text.trim());
+        if (MODE_VERIFY.equals(strokeMode)) {
+            verifyTotalStrokes(text, localStrokes);
+        }
+        return localStrokes;
+    }
+    
+    /**
+     * 批次計算多個字符串的總筆劃數
+     * 先收集所有字串中不重複的字，缺字只查詢一次（共享緩存 → cnchar），
+     * 再逐一加總，適合大量姓名一次計算。verify模式下不做逐筆比對。
+     * 缺字查詢失敗時不拋出例外，含有該字的字串回傳 -1，其餘照常計算。
+     * 
+     * @param texts 要計算的文字
+     * @return 與輸入順序對應的總筆劃數，無法計算者為 -1
+     */
+    public int[] calculateTotalStrokes(List<String> texts) {
+        Map<Integer, Integer> strokes = new HashMap<>();
+        Set<Integer> missing = new LinkedHashSet<>();
+        boolean dictionary = useDictionary();
+        
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            int index = 0;
+            while (index < text.length()) {
+                int codePoint = text.codePointAt(index);
+                index += Character.charCount(codePoint);
+                if (Character.isWhitespace(codePoint) || strokes.containsKey(codePoint) || missing.contains(codePoint)) {
+                    continue;
+                }
                 
-                logger.info("cnchar計算筆劃: {} = {} 劃", text, totalStrokes);
-                return totalStrokes;
-            } else {
-                logger.error("cnchar服務回應異常: {}", response.getStatusCode());
-                throw new RuntimeException("cnchar服務不可用，回應狀態: " + response.getStatusCode());
+                int known = dictionary ? strokeDictionary.getStrokes(codePoint) : 0;
+                if (known == 0 && (!dictionary || remoteFallback)) {
+                    Integer cached = strokeCache.getIfPresent(codePoint);
+                    if (cached == null) {
+                        missing.add(codePoint);
+                        continue;
+                    }
+                    known = cached;
+                }
+                strokes.put(codePoint, known);
+            }
+        }
+        
+        if (!missing.isEmpty()) {
+            try {
+                strokes.putAll(fetchMissingStrokes(toText(missing)));
+            } catch (RuntimeException e) {
+                logger.warn("批次查詢缺字筆劃失敗，{} 個字無法計算: {}", missing.size(), e.getMessage());
+            }
+        }
+        
+        int[] totals = new int[texts.size()];
+        for (int i = 0; i < totals.length; i++) {
+            String text = texts.get(i);
+            if (text == null) {
+                continue;
+            }
+            int index = 0;
+            while (index < text.length() && totals[i] >= 0) {
+                int codePoint = text.codePointAt(index);
+                index += Character.charCount(codePoint);
+                if (Character.isWhitespace(codePoint)) {
+                    continue;
+                }
+                Integer count = strokes.get(codePoint);
+                totals[i] = count != null ? totals[i] + count : -1;
+            }
+        }
+        
+        logger.debug("批次計算筆劃: {} 筆, {} 個缺字", texts.size(), missing.size());
+        return totals;
+    }
+    
+    /**
+     * 以內嵌字典計算總筆劃，字典缺字時視設定一次查詢共享緩存或cnchar
+     */
+    private int calculateLocalTotalStrokes(String text) {
+        int totalStrokes = 0;
+        StringBuilder missing = null;
+        int index = 0;
+        while (index < text.length()) {
+            int codePoint = text.codePointAt(index);
+            index += Character.charCount(codePoint);
+            if (Character.isWhitespace(codePoint)) {
+                continue;
             }
             
+            int strokes = strokeDictionary.getStrokes(codePoint);
+            if (strokes == 0 && remoteFallback) {
+                if (missing == null) {
+                    missing = new StringBuilder();
+                }
+                missing.appendCodePoint(codePoint);
+            }
+            totalStrokes += strokes;
+        }
+        
+        if (missing != null) {
+            totalStrokes += calculateRemoteTotalStrokes(missing.toString());
+        }
+        
+        logger.debug("內嵌字典計算筆劃: {} = {} 劃", text, totalStrokes);
+        return totalStrokes;
+    }
+    
+    /**
+     * verify模式：呼叫cnchar比對結果，失敗或不一致只記錄不影響回應
+     */
+    private void verifyTotalStrokes(String text, int localStrokes) {
+        try {
+            int remoteStrokes = calculateRemoteTotalStrokes(text);
+            if (remoteStrokes != localStrokes) {
+                logger.warn("筆劃比對不一致: {} 內嵌字典={} cnchar={}", text, localStrokes, remoteStrokes);
+            }
         } catch (Exception e) {
-            logger.error("調用cnchar服務失敗: {}", e.getMessage());
-            throw new RuntimeException("無法連接cnchar服務: " + e.getMessage(), e);
+            logger.warn("筆劃比對時cnchar服務不可用: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * 調用cnchar微服務計算總筆劃
+     * 逐字查詢緩存，只把未命中的字一次送往cnchar
+     */
+    private int calculateRemoteTotalStrokes(String text) {
+        int totalStrokes = 0;
+        StringBuilder missing = new StringBuilder();
+        
+        int index = 0;
+        while (index < text.length()) {
+            int codePoint = text.codePointAt(index);
+            index += Character.charCount(codePoint);
+            if (Character.isWhitespace(codePoint)) {
+                continue;
+            }
+            Integer cached = strokeCache.getIfPresent(codePoint);
+            if (cached != null) {
+                totalStrokes += cached;
+            } else {
+                missing.appendCodePoint(codePoint);
+            }
+        }
+        
+        if (missing.length() > 0) {
+            Map<Integer, Integer> fetched = fetchMissingStrokes(missing.toString());
+            index = 0;
+            while (index < missing.length()) {
+                int codePoint = missing.codePointAt(index);
+                index += Character.charCount(codePoint);
+                totalStrokes += fetched.getOrDefault(codePoint, 0);
+            }
+        } else {
+            logger.debug("從緩存獲取筆劃數: {} = {}", text, totalStrokes);
+        }
+        
+        return totalStrokes;
+    }
+    
+    /**
+     * 查詢緩存未命中的字：先以單次查詢讀取跨節點共享緩存(FC_STROKE_CACHE)，
+     * 仍缺的字再交給cnchar（啟用批次時與其他請求合併送出，否則直接調用 /strokes），
+     * cnchar學到的新字會非同步寫回共享緩存
+     */
+    private Map<Integer, Integer> fetchMissingStrokes(String text) {
+        Set<Integer> codePoints = new LinkedHashSet<>();
+        int index = 0;
+        while (index < text.length()) {
+            int codePoint = text.codePointAt(index);
+            index += Character.charCount(codePoint);
+            codePoints.add(codePoint);
+        }
+        
+        Map<Integer, Integer> strokes = new HashMap<>();
+        Map<Integer, Integer> shared = sharedStrokeCache.findAll(codePoints);
+        shared.forEach((codePoint, count) -> {
+            strokes.put(codePoint, count);
+            rememberStrokes(codePoint, count);
+        });
+        codePoints.removeAll(shared.keySet());
+        if (codePoints.isEmpty()) {
+            return strokes;
+        }
+        
+        Map<Integer, Integer> learned = batchEnabled ? fetchBatchedStrokes(codePoints) : fetchStrokes(toText(codePoints));
+        learned.forEach(sharedStrokeCache::enqueue);
+        strokes.putAll(learned);
+        return strokes;
+    }
+    
+    /**
+     * 交給CncharBatchClient與其他請求合併查詢
+     */
+    private Map<Integer, Integer> fetchBatchedStrokes(Set<Integer> codePoints) {
+        Map<Integer, CompletableFuture<Integer>> futures = new HashMap<>();
+        for (int codePoint : codePoints) {
+            futures.put(codePoint, batchClient.lookup(codePoint));
+        }
+        
+        Map<Integer, Integer> strokes = new HashMap<>();
+        for (Map.Entry<Integer, CompletableFuture<Integer>> entry : futures.entrySet()) {
+            int count = awaitStrokes(entry.getValue());
+            strokes.put(entry.getKey(), count);
+            rememberStrokes(entry.getKey(), count);
+        }
+        return strokes;
+    }
+    
+    private static String toText(Set<Integer> codePoints) {
+        StringBuilder text = new StringBuilder(codePoints.size());
+        for (int codePoint : codePoints) {
+            text.appendCodePoint(codePoint);
+        }
+        return text.toString();
+    }
+    
+    /**
+     * 等待批次查詢結果
+     */
+    private int awaitStrokes(CompletableFuture<Integer> future) {
+        try {
+            return future.get(serviceTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new RuntimeException("無法連接cnchar服務: " + cause.getMessage(), cause);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("cnchar服務回應逾時", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("筆劃查詢被中斷", e);
         }
     }
     
+    /**
+     * 調用cnchar微服務 /strokes，將每個字的筆劃寫入緩存
+     */
+    private Map<Integer, Integer> fetchStrokes(String text) {
+        Map<String, String> requestBody = new HashMap<>();
+        requestBody.put("text", text);
+        
+        JsonNode jsonNode = cncharHttpClient.postJson("/strokes", requestBody);
+        Map<Integer, Integer> strokes = new HashMap<>();
+        for (JsonNode detail : jsonNode.path("details")) {
+            int codePoint = detail.get("character").asText().codePointAt(0);
+            int count = detail.get("strokes").asInt();
+            strokes.put(codePoint, count);
+            // 緩存結果
+            rememberStrokes(codePoint, count);
+        }
+        
+        logger.info("cnchar計算筆劃: {} = {} 劃", text, jsonNode.path("totalStrokes").asInt());
+        return strokes;
+    }
+    
     /**
      * 獲取單個字符的筆劃數
      * 
@@ -89,67 +421,67 @@ public class CncharStrokeService {
      * @return 筆劃數
      */
     public int getCharacterStrokes(char character) {
-        String charStr = String.valueOf(character);
-        
-        // 檢查緩存
-        if (strokeCache.containsKey(charStr)) {
-            return strokeCache.get(charStr);
+        if (!useDictionary()) {
+            return fetchCharacterStrokes(character);
         }
         
+        int strokes = strokeDictionary.getStrokes(character);
+        if (MODE_VERIFY.equals(strokeMode)) {
+            verifyCharacterStrokes(character, strokes);
+        }
+        if (strokes > 0 || !remoteFallback) {
+            return strokes;
+        }
+        return fetchCharacterStrokes(character);
+    }
+    
+    /**
+     * verify模式：單字與cnchar比對，失敗或不一致只記錄不影響回應
+     */
+    private void verifyCharacterStrokes(char character, int localStrokes) {
         try {
-            String url = cncharServiceUrl + "/stroke/" + character;
-            
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-            
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                JsonNode jsonNode = objectMapper.readTree(response.getBody());
-                int strokes = jsonNode.get("strokes").asInt();
-                
-                // 緩存結果
-                strokeCache.put(charStr, strokes);
-                
-                return strokes;
-            } else {
-                logger.error("cnchar服務回應異常: {}", response.getStatusCode());
-                throw new RuntimeException("cnchar服務不可用，回應狀態: " + response.getStatusCode());
+            int remoteStrokes = fetchCharacterStrokes(character);
+            if (remoteStrokes != localStrokes) {
+                logger.warn("筆劃比對不一致: {} 內嵌字典={} cnchar={}", character, localStrokes, remoteStrokes);
             }
-            
         } catch (Exception e) {
-            logger.error("調用cnchar服務失敗: {}", e.getMessage());
-            throw new RuntimeException("無法連接cnchar服務: " + e.getMessage(), e);
+            logger.warn("筆劃比對時cnchar服務不可用: {}", e.getMessage());
         }
     }
     
     /**
-     * 檢查cnchar服務健康狀態
-     * 
-     * @return 是否健康
+     * 查詢單個缺字的筆劃數（緩存 → 共享緩存 → cnchar）
      */
-    public boolean isServiceHealthy() {
-        try {
-            String url = cncharServiceUrl + "/health";
-            ResponseEntity<String> response = restTemplate.getForEntity(url, String.class);
-            return response.getStatusCode() == HttpStatus.OK;
-        } catch (Exception e) {
-            logger.warn("cnchar服務健康檢查失敗: {}", e.getMessage());
-            return false;
+    private int fetchCharacterStrokes(int codePoint) {
+        // 檢查緩存
+        Integer cached = strokeCache.getIfPresent(codePoint);
+        if (cached != null) {
+            return cached;
         }
+        
+        return fetchMissingStrokes(new String(Character.toChars(codePoint))).getOrDefault(codePoint, 0);
     }
     
-
+    /**
+     * 是否使用內嵌字典計算
+     */
+    private boolean useDictionary() {
+        return !MODE_REMOTE.equals(strokeMode) && strokeDictionary.isLoaded();
+    }
     
     /**
-     * 清空緩存
+     * 檢查cnchar服務健康狀態
+     * 
+     * @return 是否健康
      */
-    public void clearCache() {
-        strokeCache.clear();
-        logger.info("筆劃緩存已清空");
+    public boolean isServiceHealthy() {
+        return cncharHttpClient.isHealthy();
     }
     
     /**
-     * 獲取緩存大小
+     * 獲取筆劃緩存統計（命中、未命中、淘汰次數與目前大小）
      */
-    public int getCacheSize() {
-        return strokeCache.size();
+    public BoundedFrequencyCache.CacheStats getCacheStats() {
+        return strokeCache.stats();
     }
-} 
\ No newline at end of file
+}
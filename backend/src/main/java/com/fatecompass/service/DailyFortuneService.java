@@ -0,0 +1,217 @@
+package com.fatecompass.service;
+
+import com.fatecompass.service.FortuneTemplateCatalog.Group;
+import com.fatecompass.service.FortuneTemplateCatalog.Templates;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 每日運勢服務
+ * 每日運勢是（生肖, 日期）的確定性結果：以日期與生肖經 FortuneRandomSource 產生分數與建議，
+ * 同一天同一生肖永遠得到相同答案。
+ * 十二生肖的結果在當地午夜預先算成不可變快照，以 AtomicReference 整份替換；
+ * 請求只做一次 Map 查詢。若排程尚未執行就跨日，第一個讀到舊快照的請求負責重建，
+ * 其他請求等待同一次重建完成，不會同時重算；文案模板重新載入後也以同樣方式重建。
+ */
+@Service
+public class DailyFortuneService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DailyFortuneService.class);
+    
+    private static final String[] ZODIAC_ANIMALS = {"鼠", "牛", "虎", "兔", "龍", "蛇", "馬", "羊", "猴", "雞", "狗", "豬"};
+    private static final String[] LUCK_LEVELS = {"大吉", "中吉", "小吉", "平", "小凶"};
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy年MM月dd日");
+    
+    @Value("${fortune.daily.zone:Asia/Taipei}")
+    private ZoneId zone;
+    
+    @Autowired
+    private FortuneRandomSource randomSource;
+    
+    @Autowired
+    private FortuneTemplateCatalog templateCatalog;
+    
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    
+    /**
+     * 單日十二生肖運勢快照（不可變）
+     */
+    public static final class Snapshot {
+        private final LocalDate date;
+        private final int templateVersion;
+        private final Map<String, Map<String, Object>> fortunes;
+        private final Map<String, String> resultCodes;
+        
+        Snapshot(LocalDate date, int templateVersion, Map<String, Map<String, Object>> fortunes,
+                 Map<String, String> resultCodes) {
+            this.date = date;
+            this.templateVersion = templateVersion;
+            this.fortunes = Collections.unmodifiableMap(fortunes);
+            this.resultCodes = Collections.unmodifiableMap(resultCodes);
+        }
+        
+        boolean isCurrent(LocalDate today, int currentTemplateVersion) {
+            return date.equals(today) && templateVersion == currentTemplateVersion;
+        }
+        
+        public LocalDate getDate() {
+            return date;
+        }
+        
+        /**
+         * 生肖 → 運勢，依鼠、牛、虎…豬的順序
+         */
+        public Map<String, Map<String, Object>> getFortunes() {
+            return fortunes;
+        }
+        
+        /**
+         * 生肖當日建議的精簡編碼（FortuneResultCode），寫入歷史用
+         */
+        public String getResultCode(String zodiac) {
+            return resultCodes.get(zodiac);
+        }
+    }
+    
+    @PostConstruct
+    public void init() {
+        snapshot.set(buildSnapshot(LocalDate.now(zone)));
+    }
+    
+    /**
+     * 當地午夜重建快照
+     */
+    @Scheduled(cron = "${fortune.daily.rebuild-cron:0 0 0 * * *}", zone = "${fortune.daily.zone:Asia/Taipei}")
+    public void rebuild() {
+        refreshIfStale(LocalDate.now(zone));
+    }
+    
+    /**
+     * 查詢單一生肖今日運勢
+     */
+    public Map<String, Object> getFortune(String zodiac) {
+        Map<String, Object> fortune = getSnapshot().getFortunes().get(zodiac);
+        if (fortune == null) {
+            throw new RuntimeException("不支援的生肖: " + zodiac);
+        }
+        return fortune;
+    }
+    
+    /**
+     * 距離當地下一個午夜（下次換日）的時間，供 HTTP 快取設定 max-age
+     */
+    public Duration untilNextDay() {
+        ZonedDateTime now = ZonedDateTime.now(zone);
+        return Duration.between(now, now.toLocalDate().plusDays(1).atStartOfDay(zone));
+    }
+    
+    /**
+     * 今日快照，跨日時確保只重建一次
+     */
+    public Snapshot getSnapshot() {
+        LocalDate today = LocalDate.now(zone);
+        Snapshot current = snapshot.get();
+        if (current.isCurrent(today, templateCatalog.getVersion())) {
+            return current;
+        }
+        return refreshIfStale(today);
+    }
+    
+    private synchronized Snapshot refreshIfStale(LocalDate today) {
+        Snapshot current = snapshot.get();
+        if (current.isCurrent(today, templateCatalog.getVersion())) {
+            return current;
+        }
+        Snapshot rebuilt = buildSnapshot(today);
+        snapshot.set(rebuilt);
+        logger.info("每日運勢快照已更新: {}", today);
+        return rebuilt;
+    }
+    
+    private Snapshot buildSnapshot(LocalDate date) {
+        int templateVersion = templateCatalog.getVersion();
+        Templates templates = templateCatalog.current(Group.DAILY);
+        Map<String, Map<String, Object>> fortunes = new LinkedHashMap<>();
+        Map<String, String> resultCodes = new HashMap<>();
+        for (int i = 0; i < ZODIAC_ANIMALS.length; i++) {
+            int[] code = buildFortuneCode(templates, i, date);
+            fortunes.put(ZODIAC_ANIMALS[i], buildFortune(templates, i, date, code));
+            resultCodes.put(ZODIAC_ANIMALS[i], FortuneResultCode.encode(templates.getFingerprint(), code));
+        }
+        return new Snapshot(date, templateVersion, fortunes, resultCodes);
+    }
+    
+    /**
+     * 以（日期, 生肖）為種子產生當日運勢的決定值：
+     * {運勢等級, 感情, 事業, 財運, 健康, 四段建議的模板序號}
+     */
+    private int[] buildFortuneCode(Templates templates, int zodiacIndex, LocalDate date) {
+        SplittableRandom random = randomSource.forKey("daily", date.toEpochDay() * ZODIAC_ANIMALS.length + zodiacIndex);
+        
+        int[] code = new int[9];
+        code[0] = random.nextInt(LUCK_LEVELS.length);
+        
+        for (int i = 1; i <= 4; i++) {
+            code[i] = 60 + random.nextInt(40);
+        }
+        
+        // 感情、事業、財運、健康依分數區間（80 以上、60 以上、其餘）各抽一個建議
+        for (int i = 0; i < 4; i++) {
+            code[5 + i] = templates.pick(Group.DAILY.getCategory(i), code[1 + i], random);
+        }
+        return code;
+    }
+    
+    private Map<String, Object> buildFortune(Templates templates, int zodiacIndex, LocalDate date, int[] code) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("zodiac", ZODIAC_ANIMALS[zodiacIndex]);
+        result.put("date", date.format(DATE_FORMAT));
+        result.put("overallLuck", LUCK_LEVELS[code[0]]);
+        result.put("loveScore", code[1]);
+        result.put("careerScore", code[2]);
+        result.put("wealthScore", code[3]);
+        result.put("healthScore", code[4]);
+        result.put("suggestion", renderSuggestion(code, templates));
+        return Collections.unmodifiableMap(result);
+    }
+    
+    /**
+     * 由決定值渲染當日建議文字（產生快照與讀取歷史記錄共用）
+     *
+     * @param templates 產生結果時所用的模板版本
+     */
+    public String renderSuggestion(int[] code, Templates templates) {
+        if (code.length != 9 || code[0] >= LUCK_LEVELS.length) {
+            throw new IllegalArgumentException("每日運勢編碼格式錯誤");
+        }
+        StringBuilder suggestion = templateCatalog.buffer();
+        suggestion.append("今日運勢：").append(LUCK_LEVELS[code[0]]).append("\n\n");
+        suggestion.append("建議：\n");
+        
+        for (int i = 0; i < 4; i++) {
+            if (i > 0) {
+                suggestion.append("\n");
+            }
+            templates.append(suggestion, Group.DAILY.getCategory(i), code[1 + i], code[5 + i]);
+        }
+        
+        return suggestion.toString();
+    }
+}
@@ -0,0 +1,156 @@
+package com.fatecompass.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 五行計算
+ * 五行以 0~4 的序號表示，順序與 FIVE_ELEMENTS 相同：金、木、水、火、土。
+ * 統計結果累加在呼叫端提供的 int[5] 中，不產生裝箱物件；
+ * 只有在組成回應時才透過 toMap 轉成文字鍵。
+ */
+public final class FiveElements {
+
+    public static final int METAL = 0;
+    public static final int WOOD = 1;
+    public static final int WATER = 2;
+    public static final int FIRE = 3;
+    public static final int EARTH = 4;
+
+    public static final int COUNT = 5;
+
+    private static final String[] NAMES = {"金", "木", "水", "火", "土"};
+
+    // 天干五行：甲乙木、丙丁火、戊己土、庚辛金、壬癸水
+    private static final int[] STEM_ELEMENT = {
+            WOOD, WOOD, FIRE, FIRE, EARTH, EARTH, METAL, METAL, WATER, WATER
+    };
+
+    // 地支藏干（天干序號），第一個為本氣
+    private static final int[][] HIDDEN_STEMS = {
+            {9},        // 子：癸
+            {5, 9, 7},  // 丑：己癸辛
+            {0, 2, 4},  // 寅：甲丙戊
+            {1},        // 卯：乙
+            {4, 1, 9},  // 辰：戊乙癸
+            {2, 4, 6},  // 巳：丙戊庚
+            {3, 5},     // 午：丁己
+            {5, 3, 1},  // 未：己丁乙
+            {6, 8, 4},  // 申：庚壬戊
+            {7},        // 酉：辛
+            {4, 7, 3},  // 戌：戊辛丁
+            {8, 0}      // 亥：壬甲
+    };
+
+    // 相生：金生水、木生火、水生木、火生土、土生金
+    private static final int[] GENERATES = {WATER, FIRE, WOOD, EARTH, METAL};
+
+    // 相剋：金剋木、木剋土、水剋火、火剋金、土剋水
+    private static final int[] OVERCOMES = {WOOD, EARTH, FIRE, METAL, WATER};
+
+    private FiveElements() {
+    }
+
+    /**
+     * 統計四柱五行：天干各計一次，地支以藏干計（本氣、中氣、餘氣各計一次）
+     *
+     * @param pillars 六十甲子序號
+     * @param counts  累加用的 int[5]
+     */
+    public static void tally(int[] pillars, int[] counts) {
+        for (int pillar : pillars) {
+            counts[STEM_ELEMENT[SexagenaryCalendar.stem(pillar)]]++;
+            for (int hiddenStem : HIDDEN_STEMS[SexagenaryCalendar.branch(pillar)]) {
+                counts[STEM_ELEMENT[hiddenStem]]++;
+            }
+        }
+    }
+
+    /**
+     * 統計四柱五行，回傳新的 int[5]
+     */
+    public static int[] tally(int[] pillars) {
+        int[] counts = new int[COUNT];
+        tally(pillars, counts);
+        return counts;
+    }
+
+    /**
+     * 天干五行
+     */
+    public static int ofStem(int stem) {
+        return STEM_ELEMENT[stem];
+    }
+
+    /**
+     * 地支五行（本氣）
+     */
+    public static int ofBranch(int branch) {
+        return STEM_ELEMENT[HIDDEN_STEMS[branch][0]];
+    }
+
+    /**
+     * 筆劃數五行，依尾數：1、2木，3、4火，5、6土，7、8金，9、0水
+     */
+    public static int ofStrokes(int strokes) {
+        switch (strokes % 10) {
+            case 1:
+            case 2:
+                return WOOD;
+            case 3:
+            case 4:
+                return FIRE;
+            case 5:
+            case 6:
+                return EARTH;
+            case 7:
+            case 8:
+                return METAL;
+            default:
+                return WATER;
+        }
+    }
+
+    /**
+     * a 是否生 b
+     */
+    public static boolean generates(int a, int b) {
+        return GENERATES[a] == b;
+    }
+
+    /**
+     * a 是否剋 b
+     */
+    public static boolean overcomes(int a, int b) {
+        return OVERCOMES[a] == b;
+    }
+
+    /**
+     * 最多的五行（同數時取序號小者）
+     */
+    public static int dominant(int[] counts) {
+        int best = 0;
+        for (int i = 1; i < COUNT; i++) {
+            if (counts[i] > counts[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    public static String name(int element) {
+        return NAMES[element];
+    }
+
+    /**
+     * 轉成回應用的 {金: n, 木: n, 水: n, 火: n, 土: n}（不可修改，固定順序）
+     */
+    public static Map<String, Integer> toMap(int[] counts) {
+        Map<String, Integer> map = new LinkedHashMap<>();
+        for (int i = 0; i < COUNT; i++) {
+            map.put(NAMES[i], counts[i]);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+}
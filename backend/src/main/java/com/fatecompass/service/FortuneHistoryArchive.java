@@ -0,0 +1,471 @@
+package com.fatecompass.service;
+
+import com.fatecompass.entity.FortuneHistory;
+import com.fatecompass.repository.FortuneHistorySummary;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * 冷歷史歸檔
+ * 超過 after-months 個月的算命歷史逐月搬出 FC_FORTUNE_HISTORY，寫成本機的壓縮段檔
+ * （history-yyyy-MM.seg，格式見 HistorySegmentFile），線上表只保留近期資料。
+ * 段檔先以暫存名（.seg.staged，不會被載入）寫好並 fsync，再從線上表移除該月：
+ * 表確實已分區（USER_PART_TABLES）時 DROP 該月分區，否則以日期範圍刪除；
+ * 移除成功後才改名為正式檔名，移除失敗則刪掉暫存檔，同一筆記錄不會同時出現在線上表與段檔。
+ * 移除後、改名前當機留下的暫存檔在下次歸檔時處理：其記錄仍在線上表表示尚未移除，直接捨棄，否則補上改名。
+ * 同一月份之後若又出現線上記錄（例如時鐘偏差的晚到寫入），下次歸檔時與既有段檔合併重寫。
+ *
+ * 歸檔只需由一個節點執行（enabled）；所有節點定期重新掃描目錄，
+ * 多節點部署時歸檔目錄應為共享儲存。歷史分頁與詳情在線上表查不到時由此讀取。
+ */
+@Service
+public class FortuneHistoryArchive {
+
+    private static final Logger logger = LoggerFactory.getLogger(FortuneHistoryArchive.class);
+
+    private static final String FILE_PREFIX = "history-";
+    private static final String FILE_SUFFIX = ".seg";
+    private static final String STAGED_SUFFIX = ".staged";
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    // 與 schema.sql 初始分區 P_FC_FORTUNE_INITIAL 的上界一致；此後每月一個分區
+    private static final YearMonth MONTHLY_PARTITIONS_SINCE = YearMonth.of(2024, 1);
+
+    private static final String SELECT_MONTH_SQL =
+            "SELECT HISTORY_ID, USER_ID, FORTUNE_TYPE, INPUT_DATA, RESULT_DATA, SCORE, ANALYSIS, CREATED_AT "
+                    + "FROM FC_FORTUNE_HISTORY WHERE CREATED_AT >= ? AND CREATED_AT < ? "
+                    + "ORDER BY USER_ID, CREATED_AT DESC, HISTORY_ID DESC";
+
+    private static final Comparator<FortuneHistory> NEWEST_FIRST =
+            Comparator.comparing(FortuneHistory::getCreatedAt).thenComparing(FortuneHistory::getHistoryId).reversed();
+
+    @Value("${fortune.history.archive.path:data/history-archive}")
+    private String archivePath;
+
+    @Value("${fortune.history.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${fortune.history.archive.after-months:6}")
+    private int afterMonths;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 月份 → 已載入的段檔，由新到舊排列
+    private final ConcurrentSkipListMap<YearMonth, LoadedSegment> segments =
+            new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+
+    private boolean partitionedTable;
+
+    /**
+     * 已開啟的段檔與載入時的修改時間（檔案被重寫時重新開啟）
+     */
+    private static final class LoadedSegment {
+        private final HistorySegmentFile file;
+        private final FileTime modified;
+
+        LoadedSegment(HistorySegmentFile file, FileTime modified) {
+            this.file = file;
+            this.modified = modified;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        partitionedTable = detectPartitionedTable();
+        refreshSegments();
+    }
+
+    /**
+     * 線上表是否確實依月分區；Hibernate 自動建立的表（create-drop / update）沒有分區，
+     * 非 Oracle 資料庫沒有 USER_PART_TABLES，兩者都改用範圍刪除
+     */
+    private boolean detectPartitionedTable() {
+        try {
+            Integer count = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM USER_PART_TABLES WHERE TABLE_NAME = 'FC_FORTUNE_HISTORY'", Integer.class);
+            return count != null && count > 0;
+        } catch (DataAccessException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 重新掃描歸檔目錄，載入新增或重寫過的段檔
+     */
+    @Scheduled(fixedDelayString = "${fortune.history.archive.refresh-interval-ms:60000}",
+               initialDelayString = "${fortune.history.archive.refresh-interval-ms:60000}")
+    public void refreshSegments() {
+        Path directory = Path.of(archivePath);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        Set<YearMonth> present = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                YearMonth month = monthOf(file);
+                if (month == null) {
+                    continue;
+                }
+                present.add(month);
+                FileTime modified = Files.getLastModifiedTime(file);
+                LoadedSegment loaded = segments.get(month);
+                if (loaded == null || !loaded.modified.equals(modified)) {
+                    load(month, file);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("掃描歷史歸檔目錄失敗: {}", e.getMessage());
+        }
+        segments.keySet().retainAll(present);
+    }
+
+    /**
+     * 把超過保留月數的月份逐月搬進歸檔
+     */
+    @Scheduled(cron = "${fortune.history.archive.cron:0 30 3 * * *}")
+    public void archiveAgedMonths() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            recoverStagedSegments();
+        } catch (IOException | RuntimeException e) {
+            logger.error("處理未完成的歷史歸檔失敗，本次不歸檔: {}", e.getMessage());
+            return;
+        }
+        YearMonth cutoff = YearMonth.now().minusMonths(afterMonths);
+        while (true) {
+            Timestamp oldest = jdbcTemplate.queryForObject("SELECT MIN(CREATED_AT) FROM FC_FORTUNE_HISTORY", Timestamp.class);
+            if (oldest == null) {
+                return;
+            }
+            YearMonth month = YearMonth.from(oldest.toLocalDateTime());
+            if (!month.isBefore(cutoff)) {
+                return;
+            }
+            try {
+                archiveMonth(month);
+            } catch (IOException | RuntimeException e) {
+                logger.error("歸檔 {} 的算命歷史失敗，線上資料保留不動: {}", month, e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * 歸檔中是否有資料
+     */
+    public boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    /**
+     * 用戶在游標之後（更舊）的歸檔記錄，由新到舊；至少取 limit 筆（若有），整月讀入後才停止
+     *
+     * @param createdAt 游標時間，null 表示從最新的歸檔月份開始
+     */
+    public List<FortuneHistory> findAfter(long userId, LocalDateTime createdAt, Long historyId, int limit) {
+        List<FortuneHistory> rows = new ArrayList<>();
+        for (Map.Entry<YearMonth, LoadedSegment> entry : segments.entrySet()) {
+            if (createdAt != null && entry.getKey().atDay(1).atStartOfDay().isAfter(createdAt)) {
+                continue;
+            }
+            for (FortuneHistory history : read(entry.getValue(), userId)) {
+                if (createdAt == null || isAfter(history, createdAt, historyId)) {
+                    rows.add(history);
+                }
+            }
+            if (rows.size() >= limit) {
+                break;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 由新到舊逐月讀出用戶的全部歸檔記錄交給 consumer，一次只載入一個月份
+     *
+     * @return 筆數
+     */
+    public long forEachOlder(long userId, Consumer<FortuneHistory> consumer) {
+        long count = 0;
+        for (LoadedSegment segment : segments.values()) {
+            for (FortuneHistory history : read(segment, userId)) {
+                consumer.accept(history);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 以ID查找用戶的單筆歸檔記錄（逐月以用戶索引查找）
+     */
+    public Optional<FortuneHistory> findDetail(long userId, long historyId) {
+        for (LoadedSegment segment : segments.values()) {
+            for (FortuneHistory history : read(segment, userId)) {
+                if (history.getHistoryId() == historyId) {
+                    return Optional.of(history);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * 以摘要投影呈現歸檔記錄，與線上分頁結果輸出相同欄位
+     */
+    public static FortuneHistorySummary toSummary(FortuneHistory history) {
+        return new ArchivedSummary(history);
+    }
+
+    private static final class ArchivedSummary implements FortuneHistorySummary {
+        private final FortuneHistory history;
+
+        ArchivedSummary(FortuneHistory history) {
+            this.history = history;
+        }
+
+        @Override
+        public Long getHistoryId() {
+            return history.getHistoryId();
+        }
+
+        @Override
+        public FortuneHistory.FortuneType getFortuneType() {
+            return history.getFortuneType();
+        }
+
+        @Override
+        public Integer getScore() {
+            return history.getScore();
+        }
+
+        @Override
+        public LocalDateTime getCreatedAt() {
+            return history.getCreatedAt();
+        }
+    }
+
+    private synchronized void archiveMonth(YearMonth month) throws IOException {
+        LocalDateTime start = month.atDay(1).atStartOfDay();
+        LocalDateTime end = month.plusMonths(1).atDay(1).atStartOfDay();
+        Path file = segmentPath(month);
+        Path staged = stagedPath(file);
+
+        int archived;
+        if (Files.exists(file)) {
+            archived = mergeMonth(file, staged, start, end);
+        } else {
+            archived = writeMonth(staged, start, end);
+        }
+
+        // 暫存段檔已 fsync 才移除線上資料；移除成功後才讓段檔可見
+        try {
+            removeLiveMonth(month, start, end);
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(staged);
+            throw e;
+        }
+        HistorySegmentFile.moveDurably(staged, file);
+        load(month, file);
+        logger.info("已歸檔 {} 的算命歷史: {} 筆 → {}", month, archived, file);
+    }
+
+    private void removeLiveMonth(YearMonth month, LocalDateTime start, LocalDateTime end) {
+        if (partitionedTable && !month.isBefore(MONTHLY_PARTITIONS_SINCE)) {
+            jdbcTemplate.execute("ALTER TABLE FC_FORTUNE_HISTORY DROP PARTITION FOR (TIMESTAMP '"
+                    + start.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "') UPDATE GLOBAL INDEXES");
+        } else {
+            jdbcTemplate.update("DELETE FROM FC_FORTUNE_HISTORY WHERE CREATED_AT >= ? AND CREATED_AT < ?",
+                    Timestamp.valueOf(start), Timestamp.valueOf(end));
+        }
+    }
+
+    /**
+     * 處理上次歸檔中斷留下的暫存段檔
+     * 分區刪除與範圍刪除都是整體成功或失敗：暫存檔中任一記錄仍在線上表，表示該月尚未移除，捨棄暫存檔；
+     * 否則線上資料已移除，暫存檔是這些記錄唯一的副本，補上改名
+     */
+    private synchronized void recoverStagedSegments() throws IOException {
+        Path directory = Path.of(archivePath);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> stagedFiles = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                FILE_PREFIX + "*" + FILE_SUFFIX + STAGED_SUFFIX)) {
+            files.forEach(stagedFiles::add);
+        }
+        for (Path staged : stagedFiles) {
+            String name = staged.getFileName().toString();
+            Path file = staged.resolveSibling(name.substring(0, name.length() - STAGED_SUFFIX.length()));
+            YearMonth month = monthOf(file);
+            if (month == null) {
+                continue;
+            }
+            Set<Long> stagedIds = new HashSet<>();
+            HistorySegmentFile.open(staged).readAll((history, userId) -> stagedIds.add(history.getHistoryId()));
+            boolean[] stillLive = {false};
+            jdbcTemplate.query("SELECT HISTORY_ID FROM FC_FORTUNE_HISTORY WHERE CREATED_AT >= ? AND CREATED_AT < ?",
+                    rs -> {
+                        if (stagedIds.contains(rs.getLong("HISTORY_ID"))) {
+                            stillLive[0] = true;
+                        }
+                    },
+                    Timestamp.valueOf(month.atDay(1).atStartOfDay()),
+                    Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay()));
+            if (stillLive[0]) {
+                Files.delete(staged);
+                logger.warn("捨棄未完成的歷史歸檔 {}: 線上資料尚未移除", staged);
+            } else {
+                HistorySegmentFile.moveDurably(staged, file);
+                load(month, file);
+                logger.warn("補完中斷的歷史歸檔 {} → {}", staged, file);
+            }
+        }
+    }
+
+    /**
+     * 由線上表依（用戶, 時間）順序串流寫出，不把整月資料載入記憶體
+     */
+    private int writeMonth(Path file, LocalDateTime start, LocalDateTime end) throws IOException {
+        try (HistorySegmentFile.Writer writer = HistorySegmentFile.create(file)) {
+            int[] count = {0};
+            jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(SELECT_MONTH_SQL);
+                ps.setFetchSize(500);
+                ps.setTimestamp(1, Timestamp.valueOf(start));
+                ps.setTimestamp(2, Timestamp.valueOf(end));
+                return ps;
+            }, rs -> {
+                try {
+                    writer.append(rs.getLong("USER_ID"), mapRow(rs));
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.commit();
+            return count[0];
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 同月已有段檔：與既有記錄合併（以ID去重）後寫到 target
+     */
+    private int mergeMonth(Path file, Path target, LocalDateTime start, LocalDateTime end) throws IOException {
+        Map<Long, List<FortuneHistory>> byUser = new TreeMap<>();
+        Set<Long> seen = new HashSet<>();
+        HistorySegmentFile.open(file).readAll((history, userId) -> {
+            seen.add(history.getHistoryId());
+            byUser.computeIfAbsent(userId, id -> new ArrayList<>()).add(history);
+        });
+        int[] added = {0};
+        jdbcTemplate.query(SELECT_MONTH_SQL, rs -> {
+            FortuneHistory history = mapRow(rs);
+            if (seen.add(history.getHistoryId())) {
+                byUser.computeIfAbsent(rs.getLong("USER_ID"), id -> new ArrayList<>()).add(history);
+                added[0]++;
+            }
+        }, Timestamp.valueOf(start), Timestamp.valueOf(end));
+
+        try (HistorySegmentFile.Writer writer = HistorySegmentFile.create(target)) {
+            for (Map.Entry<Long, List<FortuneHistory>> entry : byUser.entrySet()) {
+                entry.getValue().sort(NEWEST_FIRST);
+                for (FortuneHistory history : entry.getValue()) {
+                    writer.append(entry.getKey(), history);
+                }
+            }
+            writer.commit();
+        }
+        return added[0];
+    }
+
+    private FortuneHistory mapRow(ResultSet rs) throws SQLException {
+        FortuneHistory history = new FortuneHistory();
+        history.setHistoryId(rs.getLong("HISTORY_ID"));
+        history.setFortuneType(FortuneHistory.FortuneType.valueOf(rs.getString("FORTUNE_TYPE")));
+        history.setInputData(rs.getString("INPUT_DATA"));
+        history.setResultData(rs.getString("RESULT_DATA"));
+        int score = rs.getInt("SCORE");
+        history.setScore(rs.wasNull() ? null : score);
+        history.setAnalysis(rs.getString("ANALYSIS"));
+        history.setCreatedAt(rs.getTimestamp("CREATED_AT").toLocalDateTime());
+        return history;
+    }
+
+    private List<FortuneHistory> read(LoadedSegment segment, long userId) {
+        try {
+            return segment.file.read(userId);
+        } catch (IOException e) {
+            throw new RuntimeException("讀取歷史歸檔失敗: " + e.getMessage(), e);
+        }
+    }
+
+    private void load(YearMonth month, Path file) {
+        try {
+            FileTime modified = Files.getLastModifiedTime(file);
+            segments.put(month, new LoadedSegment(HistorySegmentFile.open(file), modified));
+        } catch (IOException e) {
+            logger.warn("無法開啟歷史歸檔段檔 {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static boolean isAfter(FortuneHistory history, LocalDateTime createdAt, Long historyId) {
+        int compare = history.getCreatedAt().compareTo(createdAt);
+        return compare < 0 || (compare == 0 && history.getHistoryId() < historyId);
+    }
+
+    private Path segmentPath(YearMonth month) {
+        return Path.of(archivePath, FILE_PREFIX + month.format(MONTH_FORMAT) + FILE_SUFFIX);
+    }
+
+    private static Path stagedPath(Path file) {
+        return file.resolveSibling(file.getFileName() + STAGED_SUFFIX);
+    }
+
+    private static YearMonth monthOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return YearMonth.parse(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()), MONTH_FORMAT);
+        } catch (DateTimeParseException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+}
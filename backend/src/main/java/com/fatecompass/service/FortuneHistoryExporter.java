@@ -0,0 +1,300 @@
+package com.fatecompass.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fatecompass.entity.FortuneHistory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Comparator;
+
+/**
+ * 用戶算命歷史完整匯出（NDJSON / CSV）
+ * 以 JDBC 游標（fetch-size 筆一批）逐列讀取線上表，與逐月讀取的冷歷史歸檔依時間歸併後立即寫到輸出串流
+ * （歸檔月份可能仍有晚到的線上記錄，兩邊都有的同一筆只寫一次）；
+ * 不經過 JPA（持久化上下文會隨筆數成長），也不把整份歷史放進清單，
+ * 記憶體用量與用戶的記錄數無關。結果文字與詳情端點相同，精簡編碼會渲染成全文。
+ */
+@Service
+public class FortuneHistoryExporter {
+
+    /**
+     * 匯出格式
+     */
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format of(String name) {
+            for (Format format : values()) {
+                if (format.extension.equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            throw new RuntimeException("不支援的匯出格式: " + name);
+        }
+    }
+
+    private static final String SELECT_USER_SQL =
+            "SELECT HISTORY_ID, FORTUNE_TYPE, INPUT_DATA, RESULT_DATA, SCORE, ANALYSIS, CREATED_AT "
+                    + "FROM FC_FORTUNE_HISTORY WHERE USER_ID = ? "
+                    + "ORDER BY CREATED_AT DESC, HISTORY_ID DESC";
+
+    // 與 SELECT_USER_SQL 及歸檔段檔內的順序相同
+    private static final Comparator<FortuneHistory> NEWEST_FIRST =
+            Comparator.comparing(FortuneHistory::getCreatedAt).thenComparing(FortuneHistory::getHistoryId).reversed();
+
+    private static final String CSV_HEADER = "historyId,fortuneType,typeDescription,inputData,resultData,score,analysis,createdAt";
+
+    @Value("${fortune.history.export.fetch-size:500}")
+    private int fetchSize;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private FortuneService fortuneService;
+
+    @Autowired
+    private FortuneHistoryArchive historyArchive;
+
+    /**
+     * 依時間由新到舊寫出用戶全部算命歷史（線上表與歸檔歸併）
+     *
+     * @return 匯出筆數
+     */
+    public long export(long userId, Format format, OutputStream out) throws IOException {
+        RowWriter writer = format == Format.CSV ? new CsvRowWriter(out) : new NdjsonRowWriter(out);
+        long count;
+        try {
+            count = jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(SELECT_USER_SQL);
+                ps.setFetchSize(fetchSize);
+                ps.setLong(1, userId);
+                return ps;
+            }, (ResultSetExtractor<Long>) rs -> merge(writer, new LiveRows(rs), userId));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.finish();
+        return count;
+    }
+
+    /**
+     * 歸檔逐月推送（一次只持有該用戶一個月份的記錄），每筆寫出前先寫完比它新的線上記錄
+     */
+    private long merge(RowWriter writer, LiveRows live, long userId) {
+        long[] count = {0};
+        historyArchive.forEachOlder(userId, archived -> {
+            FortuneHistory next;
+            while ((next = live.peek()) != null && NEWEST_FIRST.compare(next, archived) < 0) {
+                write(writer, live.take());
+                count[0]++;
+            }
+            if (next != null && next.getHistoryId().equals(archived.getHistoryId())) {
+                // 同一筆同時在線上表與歸檔，只寫一次
+                live.take();
+            }
+            write(writer, archived);
+            count[0]++;
+        });
+        while (live.peek() != null) {
+            write(writer, live.take());
+            count[0]++;
+        }
+        return count[0];
+    }
+
+    private void write(RowWriter writer, FortuneHistory history) {
+        try {
+            writer.write(history, fortuneService.renderResult(history));
+        } catch (IOException e) {
+            // 多半是客戶端中斷下載，交由呼叫端結束查詢
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 線上表游標，可預看下一筆
+     */
+    private final class LiveRows {
+        private final ResultSet rs;
+        private FortuneHistory next;
+        private boolean exhausted;
+
+        LiveRows(ResultSet rs) {
+            this.rs = rs;
+        }
+
+        FortuneHistory peek() {
+            if (next == null && !exhausted) {
+                try {
+                    if (rs.next()) {
+                        next = mapRow(rs);
+                    } else {
+                        exhausted = true;
+                    }
+                } catch (SQLException e) {
+                    throw new RuntimeException("讀取算命歷史失敗: " + e.getMessage(), e);
+                }
+            }
+            return next;
+        }
+
+        FortuneHistory take() {
+            FortuneHistory row = peek();
+            next = null;
+            return row;
+        }
+    }
+
+    private FortuneHistory mapRow(ResultSet rs) throws SQLException {
+        FortuneHistory history = new FortuneHistory();
+        history.setHistoryId(rs.getLong("HISTORY_ID"));
+        history.setFortuneType(FortuneHistory.FortuneType.valueOf(rs.getString("FORTUNE_TYPE")));
+        history.setInputData(rs.getString("INPUT_DATA"));
+        history.setResultData(rs.getString("RESULT_DATA"));
+        int score = rs.getInt("SCORE");
+        history.setScore(rs.wasNull() ? null : score);
+        history.setAnalysis(rs.getString("ANALYSIS"));
+        history.setCreatedAt(rs.getTimestamp("CREATED_AT").toLocalDateTime());
+        return history;
+    }
+
+    private interface RowWriter {
+        void write(FortuneHistory history, String resultData) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    /**
+     * 每列一個 JSON 物件，以換行分隔
+     */
+    private final class NdjsonRowWriter implements RowWriter {
+        private final JsonGenerator generator;
+
+        NdjsonRowWriter(OutputStream out) throws IOException {
+            generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(FortuneHistory history, String resultData) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("historyId", history.getHistoryId());
+            generator.writeStringField("fortuneType", history.getFortuneType().name());
+            generator.writeStringField("typeDescription", history.getFortuneType().getDescription());
+            generator.writeStringField("inputData", history.getInputData());
+            generator.writeStringField("resultData", resultData);
+            if (history.getScore() != null) {
+                generator.writeNumberField("score", history.getScore());
+            } else {
+                generator.writeNullField("score");
+            }
+            generator.writeStringField("analysis", history.getAnalysis());
+            generator.writeStringField("createdAt", history.getCreatedAt().toString());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.flush();
+        }
+    }
+
+    /**
+     * RFC 4180 CSV：含逗號、引號或換行的欄位加上引號，引號重複一次。
+     * 以 = + - @ 或 Tab、CR 開頭的文字欄位前加單引號，試算表開啟時不會當成公式執行
+     */
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(OutputStream out) throws IOException {
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 8192);
+            writer.write(CSV_HEADER);
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void write(FortuneHistory history, String resultData) throws IOException {
+            writer.write(String.valueOf(history.getHistoryId()));
+            writer.write(',');
+            writer.write(history.getFortuneType().name());
+            writer.write(',');
+            writeField(history.getFortuneType().getDescription());
+            writer.write(',');
+            writeField(history.getInputData());
+            writer.write(',');
+            writeField(resultData);
+            writer.write(',');
+            if (history.getScore() != null) {
+                writer.write(String.valueOf(history.getScore()));
+            }
+            writer.write(',');
+            writeField(history.getAnalysis());
+            writer.write(',');
+            writer.write(history.getCreatedAt().toString());
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+                value = "'" + value;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+}
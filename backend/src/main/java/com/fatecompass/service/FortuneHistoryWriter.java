@@ -0,0 +1,324 @@
+package com.fatecompass.service;
+
+import com.fatecompass.entity.FortuneHistory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 算命歷史非同步寫入（write-behind）
+ * 請求執行緒只把記錄放進有界佇列；背景執行緒一次取出最多 batch-size 筆，
+ * 以 JDBC 批次 INSERT 在單一交易中寫入 FC_FORTUNE_HISTORY。
+ * HISTORY_ID 由 SequenceBlockAllocator 依 FC_FORTUNE_SEQ 區塊取號，與實體的序列設定一致。
+ * 同一交易內把整批記錄依用戶彙總，以 MERGE 累加 FC_USER_FORTUNE_STATS 計數列，
+ * 統計與歷史一起提交或一起回滾，不會重複或遺漏計數。
+ *
+ * 佇列滿時提交端最多等待 offer-timeout-ms（背壓），仍無空位則丟棄該筆並計數，
+ * 不讓歷史記錄拖垮算命請求。批次因資料錯誤失敗時改為逐筆寫入，只丟棄有問題的記錄；
+ * 其他資料庫錯誤依 retry 設定退避重試。正常關閉時會把佇列寫完再結束。
+ */
+@Service
+public class FortuneHistoryWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(FortuneHistoryWriter.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO FC_FORTUNE_HISTORY (HISTORY_ID, USER_ID, FORTUNE_TYPE, INPUT_DATA, RESULT_DATA, SCORE, ANALYSIS, CREATED_AT) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // 來源列以 CAST 標明型別（H2 無法推斷 SELECT 清單中參數的型別），Oracle 與 H2 皆可執行
+    private static final String MERGE_STATS_SQL =
+            "MERGE INTO FC_USER_FORTUNE_STATS s "
+                    + "USING (SELECT CAST(? AS NUMBER(10)) AS USER_ID, CAST(? AS NUMBER(10)) AS BAZI_COUNT, "
+                    + "CAST(? AS NUMBER(10)) AS NAME_COUNT, CAST(? AS NUMBER(10)) AS DAILY_COUNT, "
+                    + "CAST(? AS NUMBER(10)) AS ZODIAC_COUNT, CAST(? AS NUMBER(12)) AS SCORE_SUM, "
+                    + "CAST(? AS TIMESTAMP) AS LAST_FORTUNE_AT FROM DUAL) d "
+                    + "ON (s.USER_ID = d.USER_ID) "
+                    + "WHEN MATCHED THEN UPDATE SET "
+                    + "s.BAZI_COUNT = s.BAZI_COUNT + d.BAZI_COUNT, "
+                    + "s.NAME_COUNT = s.NAME_COUNT + d.NAME_COUNT, "
+                    + "s.DAILY_COUNT = s.DAILY_COUNT + d.DAILY_COUNT, "
+                    + "s.ZODIAC_COUNT = s.ZODIAC_COUNT + d.ZODIAC_COUNT, "
+                    + "s.TOTAL_COUNT = s.TOTAL_COUNT + d.BAZI_COUNT + d.NAME_COUNT + d.DAILY_COUNT + d.ZODIAC_COUNT, "
+                    + "s.SCORE_SUM = s.SCORE_SUM + d.SCORE_SUM, "
+                    + "s.LAST_FORTUNE_AT = GREATEST(COALESCE(s.LAST_FORTUNE_AT, d.LAST_FORTUNE_AT), d.LAST_FORTUNE_AT), "
+                    + "s.UPDATED_AT = CURRENT_TIMESTAMP "
+                    + "WHEN NOT MATCHED THEN INSERT (USER_ID, BAZI_COUNT, NAME_COUNT, DAILY_COUNT, ZODIAC_COUNT, "
+                    + "TOTAL_COUNT, SCORE_SUM, LAST_FORTUNE_AT, UPDATED_AT) "
+                    + "VALUES (d.USER_ID, d.BAZI_COUNT, d.NAME_COUNT, d.DAILY_COUNT, d.ZODIAC_COUNT, "
+                    + "d.BAZI_COUNT + d.NAME_COUNT + d.DAILY_COUNT + d.ZODIAC_COUNT, d.SCORE_SUM, d.LAST_FORTUNE_AT, CURRENT_TIMESTAMP)";
+
+    @Value("${fortune.history.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${fortune.history.batch-size:200}")
+    private int batchSize;
+
+    @Value("${fortune.history.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    @Value("${fortune.history.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${fortune.history.retry.delay-ms:1000}")
+    private long retryDelayMs;
+
+    @Value("${fortune.history.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private BlockingQueue<FortuneHistory> queue;
+    private TransactionTemplate transactionTemplate;
+    private SequenceBlockAllocator idAllocator;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    private Counter writtenCounter;
+    private Counter droppedCounter;
+    private Timer batchTimer;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // 取號語法依資料庫方言（Oracle: FC_FORTUNE_SEQ.nextval，H2: next value for FC_FORTUNE_SEQ）
+        Dialect dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        idAllocator = new SequenceBlockAllocator(jdbcTemplate,
+                dialect.getSequenceSupport().getSequenceNextValString("FC_FORTUNE_SEQ"),
+                FortuneHistory.ID_ALLOCATION_SIZE);
+
+        writtenCounter = meterRegistry.counter("fortune.history.written");
+        droppedCounter = meterRegistry.counter("fortune.history.dropped");
+        batchTimer = Timer.builder("fortune.history.batch.latency")
+                .description("算命歷史單批寫入耗時")
+                .register(meterRegistry);
+        meterRegistry.gaugeCollectionSize("fortune.history.queue.depth", List.of(), queue);
+
+        running = true;
+        writerThread = new Thread(this::drainLoop, "fortune-history-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * 關閉時停止接收並等待佇列寫完
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        try {
+            writerThread.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            logger.warn("關閉時仍有 {} 筆算命歷史未寫入", queue.size());
+        }
+    }
+
+    /**
+     * 提交一筆歷史記錄（非阻塞為主，佇列滿時最多等待 offer-timeout-ms）
+     *
+     * @return 是否已排入佇列
+     */
+    public boolean submit(FortuneHistory history) {
+        if (history.getCreatedAt() == null) {
+            history.setCreatedAt(LocalDateTime.now());
+        }
+        try {
+            if (running && queue.offer(history, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        droppedCounter.increment();
+        logger.warn("算命歷史佇列已滿，捨棄一筆記錄");
+        return false;
+    }
+
+    private void drainLoop() {
+        List<FortuneHistory> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                FortuneHistory first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("算命歷史寫入失敗，捨棄 {} 筆: {}", batch.size(), e.getMessage());
+                droppedCounter.increment(batch.size());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<FortuneHistory> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                batchTimer.record(() -> transactionTemplate.executeWithoutResult(status -> insert(batch)));
+                writtenCounter.increment(batch.size());
+                return;
+            } catch (StatsRowConflictException e) {
+                // 其他節點剛為同一新用戶建立統計列，MERGE 的 INSERT 分支撞主鍵；整批已回滾，重試即走 UPDATE 分支
+                if (attempt >= maxAttempts) {
+                    writeOneByOne(batch);
+                    return;
+                }
+            } catch (DataIntegrityViolationException e) {
+                // 歷史主鍵重複等衝突重試也不會改變結果；
+                // 單筆資料有問題（例如用戶已刪除）時同樣改逐筆寫入
+                writeOneByOne(batch);
+                return;
+            } catch (DataAccessException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                logger.warn("算命歷史批次寫入失敗（第 {} 次），稍後重試: {}", attempt, e.getMessage());
+                Thread.sleep(retryDelayMs * attempt);
+            }
+        }
+    }
+
+    /**
+     * 統計列 MERGE 撞主鍵：MERGE 只寫入 FC_USER_FORTUNE_STATS，該表唯一的唯一約束是主鍵，
+     * 因此依失敗的語句判斷，不需解析各資料庫驅動（與語系）不同的錯誤訊息
+     */
+    private static final class StatsRowConflictException extends DuplicateKeyException {
+        StatsRowConflictException(DuplicateKeyException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    private void writeOneByOne(List<FortuneHistory> batch) {
+        for (FortuneHistory history : batch) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> insert(List.of(history)));
+                writtenCounter.increment();
+            } catch (DataAccessException e) {
+                droppedCounter.increment();
+                logger.warn("算命歷史寫入失敗，捨棄用戶 {} 的記錄: {}",
+                        history.getUser().getUserId(), e.getMessage());
+            }
+        }
+    }
+
+    private void insert(List<FortuneHistory> histories) {
+        for (FortuneHistory history : histories) {
+            if (history.getHistoryId() == null) {
+                history.setHistoryId(idAllocator.next());
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, histories, histories.size(), this::bind);
+        
+        // 依用戶ID排序後MERGE，多節點同時更新同一批用戶時鎖定順序一致，避免死結
+        Map<Long, StatsDelta> deltas = new TreeMap<>();
+        for (FortuneHistory history : histories) {
+            deltas.computeIfAbsent(history.getUser().getUserId(), StatsDelta::new).add(history);
+        }
+        List<StatsDelta> rows = new ArrayList<>(deltas.values());
+        try {
+            jdbcTemplate.batchUpdate(MERGE_STATS_SQL, rows, rows.size(), (ps, delta) -> delta.bind(ps));
+        } catch (DuplicateKeyException e) {
+            throw new StatsRowConflictException(e);
+        }
+    }
+
+    private void bind(PreparedStatement ps, FortuneHistory history) throws SQLException {
+        ps.setLong(1, history.getHistoryId());
+        ps.setLong(2, history.getUser().getUserId());
+        ps.setString(3, history.getFortuneType().name());
+        ps.setString(4, history.getInputData());
+        ps.setString(5, history.getResultData());
+        if (history.getScore() != null) {
+            ps.setInt(6, history.getScore());
+        } else {
+            ps.setNull(6, Types.NUMERIC);
+        }
+        ps.setString(7, history.getAnalysis());
+        ps.setTimestamp(8, Timestamp.valueOf(history.getCreatedAt()));
+    }
+
+    /**
+     * 單一用戶在本批中的計數增量
+     */
+    private static final class StatsDelta {
+        
+        private final long userId;
+        private final long[] counts = new long[FortuneHistory.FortuneType.values().length];
+        private long scoreSum;
+        private LocalDateTime lastFortuneAt;
+        
+        StatsDelta(Long userId) {
+            this.userId = userId;
+        }
+        
+        void add(FortuneHistory history) {
+            counts[history.getFortuneType().ordinal()]++;
+            if (history.getScore() != null) {
+                scoreSum += history.getScore();
+            }
+            if (lastFortuneAt == null || history.getCreatedAt().isAfter(lastFortuneAt)) {
+                lastFortuneAt = history.getCreatedAt();
+            }
+        }
+        
+        void bind(PreparedStatement ps) throws SQLException {
+            ps.setLong(1, userId);
+            ps.setLong(2, counts[FortuneHistory.FortuneType.BAZI.ordinal()]);
+            ps.setLong(3, counts[FortuneHistory.FortuneType.NAME.ordinal()]);
+            ps.setLong(4, counts[FortuneHistory.FortuneType.DAILY.ordinal()]);
+            ps.setLong(5, counts[FortuneHistory.FortuneType.ZODIAC.ordinal()]);
+            ps.setLong(6, scoreSum);
+            ps.setTimestamp(7, Timestamp.valueOf(lastFortuneAt));
+        }
+    }
+}
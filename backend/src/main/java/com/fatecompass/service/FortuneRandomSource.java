@@ -0,0 +1,27 @@
+package com.fatecompass.service;
+
+import java.util.SplittableRandom;
+
+/**
+ * 算命隨機來源
+ * 依請求的語意鍵（姓名、出生時辰、生肖 + 日期等）取得隨機序列，
+ * 相同的鍵在任何節點、任何時間都產生相同的序列，使結果可重現、可緩存。
+ */
+public interface FortuneRandomSource {
+
+    /**
+     * 取得指定語意鍵的隨機序列
+     *
+     * @param namespace 功能類別，例如 "name"、"bazi"、"daily"，避免不同功能的鍵互相碰撞
+     * @param key       語意鍵
+     * @return 新的隨機序列（非執行緒安全，僅供單次請求使用）
+     */
+    SplittableRandom forKey(String namespace, String key);
+
+    /**
+     * 以數值語意鍵取得隨機序列
+     */
+    default SplittableRandom forKey(String namespace, long key) {
+        return forKey(namespace, Long.toString(key));
+    }
+}
@@ -0,0 +1,110 @@
+package com.fatecompass.service;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * 算命結果精簡編碼
+ * 分析文字完全由少數整數決定（四柱序號、分數、筆劃與各段模板序號），
+ * 歷史記錄只保存這些整數，讀取時再以產生當時的模板渲染回文字。
+ *
+ * 格式為 "@v2:" + base64url(各值的 varint)，第一個值是產生當時所用模板組的指紋
+ * （FortuneTemplateCatalog.Templates），讀取時以指紋取回該版本（FC_FORTUNE_TEMPLATE_VERSION）渲染。
+ * 每個小於 128 的值只占一個位元組，一筆八字結果約 20 個字元。
+ * "@v1:" 為不帶指紋的舊格式，仍可讀取（以最早發布的模板版本渲染）；不以這兩個前綴開頭的內容視為舊版全文，原樣回傳。
+ */
+public final class FortuneResultCode {
+
+    public static final String PREFIX = "@v2:";
+    private static final String PREFIX_V1 = "@v1:";
+
+    // v1 編碼沒有指紋
+    public static final int NO_FINGERPRINT = -1;
+
+    private final int templateFingerprint;
+    private final int[] values;
+
+    private FortuneResultCode(int templateFingerprint, int[] values) {
+        this.templateFingerprint = templateFingerprint;
+        this.values = values;
+    }
+
+    /**
+     * 產生時的模板指紋，舊格式為 NO_FINGERPRINT
+     */
+    public int getTemplateFingerprint() {
+        return templateFingerprint;
+    }
+
+    public int[] getValues() {
+        return values;
+    }
+
+    public static boolean isEncoded(String resultData) {
+        return resultData != null && (resultData.startsWith(PREFIX) || resultData.startsWith(PREFIX_V1));
+    }
+
+    /**
+     * @param templateFingerprint 產生結果時的模板指紋（非負）
+     */
+    public static String encode(int templateFingerprint, int[] values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(values.length + 6);
+        writeVarint(out, templateFingerprint);
+        for (int value : values) {
+            writeVarint(out, value);
+        }
+        return PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * 解出編碼中的指紋與整數
+     *
+     * @throws IllegalArgumentException 內容不是有效的編碼
+     */
+    public static FortuneResultCode decode(String resultData) {
+        if (!isEncoded(resultData)) {
+            throw new IllegalArgumentException("不是結果編碼");
+        }
+        boolean v1 = resultData.startsWith(PREFIX_V1);
+        byte[] bytes = Base64.getUrlDecoder().decode(resultData.substring(PREFIX.length()));
+        int[] values = new int[bytes.length];
+        int count = 0;
+        int value = 0;
+        int shift = 0;
+        for (byte b : bytes) {
+            if (shift > 28) {
+                throw new IllegalArgumentException("結果編碼數值過大");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                values[count++] = value;
+                value = 0;
+                shift = 0;
+            } else {
+                shift += 7;
+            }
+        }
+        if (shift != 0) {
+            throw new IllegalArgumentException("結果編碼不完整");
+        }
+        if (v1) {
+            return new FortuneResultCode(NO_FINGERPRINT, Arrays.copyOf(values, count));
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("結果編碼缺少模板指紋");
+        }
+        return new FortuneResultCode(values[0], Arrays.copyOfRange(values, 1, count));
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("結果編碼不支援負數: " + value);
+        }
+        while (value >= 0x80) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
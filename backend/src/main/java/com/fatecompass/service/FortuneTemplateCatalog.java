@@ -0,0 +1,486 @@
+package com.fatecompass.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fatecompass.entity.FortuneTemplateVersion;
+import com.fatecompass.repository.FortuneTemplateVersionRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * 算命文案模板目錄
+ * 啟動時由 fortune/templates.json 載入，依類別與分數區間整理成不可變的 String[]，
+ * 以 Category 序號直接索引，請求時不再建立任何模板陣列。
+ *
+ * 檔案格式：{ "類別鍵": { "區間下限分數": ["模板", ...], ... }, ... }
+ * 分數 ≥ 區間下限時使用該區間（取符合的最高區間），低於所有下限時使用最低區間；
+ * 不分區間的類別只有 "0" 一個區間。
+ *
+ * 模板檔位於檔案系統時（file: 路徑，或開發時的 target/classes），
+ * 每 fortune.templates.reload-interval-ms 檢查一次修改時間，變更後重新載入並整份替換；
+ * 新檔解析失敗或缺少類別時保留舊目錄。每次成功載入 version 加一，
+ * 預先算好的結果（例如每日運勢快照）可據此判斷是否需要重建。
+ *
+ * 算命歷史只保存抽中的模板序號與所用模板組（Group）的內容指紋（fingerprint），讀取時重新渲染。
+ * 每個載入過的模板組版本都以指紋為鍵寫入 FC_FORTUNE_TEMPLATE_VERSION（只新增、不修改），
+ * 舊記錄依其指紋取回當時的版本渲染，模板修改後仍得到與當初相同的文字。
+ * 資料庫暫時不可用時版本留在本機並於下次檢查時重試；本機產生的記錄一律可由本機渲染。
+ */
+@Component
+public class FortuneTemplateCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(FortuneTemplateCatalog.class);
+
+    // 單一執行緒重複使用的組字緩衝區，超過此容量的不保留
+    private static final int MAX_RETAINED_BUFFER = 8192;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    /**
+     * 模板類別
+     */
+    public enum Category {
+        BAZI_PERSONALITY("bazi.personality"),
+        BAZI_CAREER("bazi.career"),
+        BAZI_LOVE("bazi.love"),
+        BAZI_HEALTH("bazi.health"),
+        NAME_MEANING("name.meaning"),
+        NAME_PERSONALITY("name.personality"),
+        NAME_LUCK("name.luck"),
+        DAILY_LOVE("daily.love"),
+        DAILY_CAREER("daily.career"),
+        DAILY_WEALTH("daily.wealth"),
+        DAILY_HEALTH("daily.health");
+
+        private final String key;
+
+        Category(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * 模板組：一種算命結果所用的類別，依分析段落順序排列；指紋與版本以組為單位
+     */
+    public enum Group {
+        BAZI(Category.BAZI_PERSONALITY, Category.BAZI_CAREER, Category.BAZI_LOVE, Category.BAZI_HEALTH),
+        NAME(Category.NAME_MEANING, Category.NAME_PERSONALITY, Category.NAME_LUCK),
+        DAILY(Category.DAILY_LOVE, Category.DAILY_CAREER, Category.DAILY_WEALTH, Category.DAILY_HEALTH);
+
+        private final Category[] categories;
+
+        Group(Category... categories) {
+            this.categories = categories;
+        }
+
+        public Category getCategory(int index) {
+            return categories[index];
+        }
+
+        public int size() {
+            return categories.length;
+        }
+    }
+
+    /**
+     * 模板組的一個版本（不可變）：抽選與渲染都在同一版本上進行，
+     * 寫入編碼的指紋與實際使用的模板必然一致
+     */
+    public static final class Templates {
+        private final Group group;
+        // 以 Category 序號索引，只有本組的類別有值
+        private final Bands[] bands;
+        private final int fingerprint;
+
+        private Templates(Group group, Bands[] bands) {
+            this.group = group;
+            this.bands = bands;
+            CRC32 crc = new CRC32();
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+            for (Category category : group.categories) {
+                buffer.clear();
+                crc.update(buffer.putInt(bands[category.ordinal()].fingerprint).array());
+            }
+            this.fingerprint = (int) (crc.getValue() & 0x0FFFFFFF);
+        }
+
+        public Group getGroup() {
+            return group;
+        }
+
+        /**
+         * 內容指紋（非負，最多 28 位元）；任一模板文字、順序或區間變動都會改變
+         */
+        public int getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * 依分數所在區間隨機抽一個模板，回傳其在區間內的序號
+         */
+        public int pick(Category category, int score, SplittableRandom random) {
+            return random.nextInt(bands(category).forScore(score).length);
+        }
+
+        /**
+         * 不分區間的類別隨機抽一個模板序號
+         */
+        public int pick(Category category, SplittableRandom random) {
+            return pick(category, 0, random);
+        }
+
+        /**
+         * 把分數所在區間的第 index 個模板附加到 out
+         *
+         * @throws IllegalArgumentException 區間內沒有該序號的模板
+         */
+        public void append(StringBuilder out, Category category, int score, int index) {
+            String[] templates = bands(category).forScore(score);
+            if (index < 0 || index >= templates.length) {
+                throw new IllegalArgumentException("模板序號超出範圍: " + category.getKey() + "#" + index);
+            }
+            out.append(templates[index]);
+        }
+
+        private Bands bands(Category category) {
+            Bands found = bands[category.ordinal()];
+            if (found == null) {
+                throw new IllegalArgumentException("模板類別 " + category.getKey() + " 不屬於 " + group);
+            }
+            return found;
+        }
+    }
+
+    /**
+     * 單一類別：區間下限（由高到低）與對應模板，以及整個類別內容的 CRC32
+     */
+    private static final class Bands {
+        private final int[] minScores;
+        private final String[][] templates;
+        private final int fingerprint;
+
+        Bands(int[] minScores, String[][] templates) {
+            this.minScores = minScores;
+            this.templates = templates;
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < minScores.length; i++) {
+                crc.update(ByteBuffer.allocate(Integer.BYTES * 2).putInt(minScores[i]).putInt(templates[i].length).array());
+                for (String template : templates[i]) {
+                    byte[] bytes = template.getBytes(StandardCharsets.UTF_8);
+                    crc.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+                    crc.update(bytes);
+                }
+            }
+            this.fingerprint = (int) crc.getValue();
+        }
+
+        String[] forScore(int score) {
+            for (int i = 0; i < minScores.length; i++) {
+                if (score >= minScores[i]) {
+                    return templates[i];
+                }
+            }
+            return templates[templates.length - 1];
+        }
+    }
+
+    @Value("${fortune.templates.location:classpath:fortune/templates.json}")
+    private Resource templatesResource;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private FortuneTemplateVersionRepository versionRepository;
+
+    // 目前各組的版本，重新載入時整份替換
+    private volatile Map<Group, Templates> catalog;
+
+    // 指紋 -> 版本：本機載入過的與從資料庫取回的，版本不可變，只增不減
+    private final ConcurrentHashMap<Integer, Templates> versions = new ConcurrentHashMap<>();
+
+    // 尚未成功寫入資料庫的版本
+    private final Map<Integer, Templates> unpublished = new ConcurrentHashMap<>();
+
+    // 各組最早發布的版本
+    private final Map<Group, Templates> earliest = new ConcurrentHashMap<>();
+
+    private volatile int version;
+
+    private long lastModified;
+
+    @PostConstruct
+    public void load() {
+        try {
+            catalog = register(parse());
+            lastModified = lastModified();
+            logger.info("算命文案模板已載入: {} 個類別", Category.values().length);
+        } catch (IOException e) {
+            throw new RuntimeException("載入算命文案模板失敗: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 模板檔變更時重新載入
+     */
+    @Scheduled(fixedDelayString = "${fortune.templates.reload-interval-ms:10000}",
+               initialDelayString = "${fortune.templates.reload-interval-ms:10000}")
+    public void reloadIfModified() {
+        publishPending();
+        if (!templatesResource.isFile()) {
+            return;
+        }
+        long modified = lastModified();
+        if (modified == lastModified) {
+            return;
+        }
+        lastModified = modified;
+        try {
+            catalog = register(parse());
+            version++;
+            logger.info("算命文案模板已重新載入: 版本 {}", version);
+        } catch (IOException e) {
+            logger.warn("重新載入算命文案模板失敗，沿用目前版本: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 目錄版本，每次重新載入成功後遞增
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * 模板組目前的版本；抽選模板並寫入編碼時使用
+     */
+    public Templates current(Group group) {
+        return catalog.get(group);
+    }
+
+    /**
+     * 依結果編碼中的指紋取回當時的版本：先查本機，再查 FC_FORTUNE_TEMPLATE_VERSION（其他節點發布的版本）
+     *
+     * @return 找不到該指紋（或指紋屬於其他組）時為空
+     */
+    public Optional<Templates> published(Group group, int fingerprint) {
+        Templates found = versions.get(fingerprint);
+        if (found == null) {
+            found = versionRepository.findById(fingerprint).map(this::restore).orElse(null);
+            if (found != null) {
+                found = remember(found);
+            }
+        }
+        return found != null && found.group == group ? Optional.of(found) : Optional.empty();
+    }
+
+    /**
+     * 模板組最早發布的版本；v1 編碼沒有指紋，產生時的模板即是開始記錄版本前的模板
+     */
+    public Templates earliest(Group group) {
+        Templates found = earliest.get(group);
+        if (found != null) {
+            return found;
+        }
+        Optional<FortuneTemplateVersion> stored =
+                versionRepository.findFirstByTemplateGroupOrderByCreatedAtAscFingerprintAsc(group.name());
+        if (stored.isEmpty()) {
+            // 尚未有任何版本寫入資料庫（發布待重試），目前版本即是最早的版本
+            return current(group);
+        }
+        found = remember(restore(stored.get()));
+        earliest.putIfAbsent(group, found);
+        return found;
+    }
+
+    /**
+     * 目前執行緒的組字緩衝區（已清空）；呼叫端以 toString() 取出結果，不可跨呼叫保留
+     */
+    public StringBuilder buffer() {
+        StringBuilder buffer = BUFFER.get();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            buffer = new StringBuilder(512);
+            BUFFER.set(buffer);
+        }
+        buffer.setLength(0);
+        return buffer;
+    }
+
+    /**
+     * 記下新載入的各組版本，並在替換目前目錄前寫入資料庫
+     */
+    private Map<Group, Templates> register(Bands[] parsed) {
+        Map<Group, Templates> groups = new EnumMap<>(Group.class);
+        for (Group group : Group.values()) {
+            Bands[] bands = new Bands[parsed.length];
+            for (Category category : group.categories) {
+                bands[category.ordinal()] = parsed[category.ordinal()];
+            }
+            Templates templates = remember(new Templates(group, bands));
+            groups.put(group, templates);
+            if (!isPublished(templates.fingerprint)) {
+                unpublished.put(templates.fingerprint, templates);
+            }
+        }
+        publishPending();
+        return groups;
+    }
+
+    private boolean isPublished(int fingerprint) {
+        try {
+            return versionRepository.existsById(fingerprint);
+        } catch (DataAccessException e) {
+            // 交由 publishPending 寫入時處理
+            return false;
+        }
+    }
+
+    private Templates remember(Templates templates) {
+        Templates existing = versions.putIfAbsent(templates.fingerprint, templates);
+        return existing != null ? existing : templates;
+    }
+
+    /**
+     * 把尚未寫入的版本存進 FC_FORTUNE_TEMPLATE_VERSION；資料庫不可用時保留到下次檢查
+     */
+    private void publishPending() {
+        for (Templates templates : unpublished.values()) {
+            try {
+                versionRepository.save(new FortuneTemplateVersion(templates.fingerprint, templates.group.name(),
+                        serialize(templates)));
+                logger.info("算命文案模板版本已發布: {} {}", templates.group, templates.fingerprint);
+            } catch (DataIntegrityViolationException e) {
+                logger.debug("算命文案模板版本已存在: {}", templates.fingerprint);
+            } catch (DataAccessException e) {
+                logger.warn("發布算命文案模板版本 {} 失敗，稍後重試: {}", templates.fingerprint, e.getMessage());
+                continue;
+            }
+            unpublished.remove(templates.fingerprint);
+        }
+    }
+
+    private String serialize(Templates templates) {
+        Map<String, Map<String, List<String>>> raw = new LinkedHashMap<>();
+        for (Category category : templates.group.categories) {
+            Bands bands = templates.bands[category.ordinal()];
+            Map<String, List<String>> byScore = new LinkedHashMap<>();
+            for (int i = 0; i < bands.minScores.length; i++) {
+                byScore.put(String.valueOf(bands.minScores[i]), Arrays.asList(bands.templates[i]));
+            }
+            raw.put(category.getKey(), byScore);
+        }
+        try {
+            return objectMapper.writeValueAsString(raw);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化算命文案模板失敗", e);
+        }
+    }
+
+    /**
+     * 由資料庫記錄還原版本，內容須與主鍵的指紋相符
+     */
+    private Templates restore(FortuneTemplateVersion stored) {
+        try {
+            Group group = Group.valueOf(stored.getTemplateGroup());
+            Map<String, Map<String, List<String>>> raw = objectMapper.readValue(stored.getTemplates(),
+                    new TypeReference<Map<String, Map<String, List<String>>>>() {});
+            Bands[] bands = new Bands[Category.values().length];
+            for (Category category : group.categories) {
+                Map<String, List<String>> byScore = raw.get(category.getKey());
+                if (byScore == null || byScore.isEmpty()) {
+                    throw new IOException("缺少模板類別: " + category.getKey());
+                }
+                bands[category.ordinal()] = toBands(category.getKey(), byScore);
+            }
+            Templates templates = new Templates(group, bands);
+            if (templates.fingerprint != stored.getFingerprint()) {
+                throw new IOException("內容與指紋不符");
+            }
+            return templates;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("算命文案模板版本 " + stored.getFingerprint() + " 無法還原: " + e.getMessage(), e);
+        }
+    }
+
+    private Bands[] parse() throws IOException {
+        Map<String, Map<String, List<String>>> raw;
+        try (InputStream in = templatesResource.getInputStream()) {
+            raw = objectMapper.readValue(in, new TypeReference<Map<String, Map<String, List<String>>>>() {});
+        }
+
+        Category[] categories = Category.values();
+        Bands[] parsed = new Bands[categories.length];
+        for (Category category : categories) {
+            Map<String, List<String>> bands = raw.get(category.getKey());
+            if (bands == null || bands.isEmpty()) {
+                throw new IOException("缺少模板類別: " + category.getKey());
+            }
+            parsed[category.ordinal()] = toBands(category.getKey(), bands);
+        }
+        return parsed;
+    }
+
+    private Bands toBands(String key, Map<String, List<String>> bands) throws IOException {
+        TreeMap<Integer, String[]> sorted = new TreeMap<>(Comparator.reverseOrder());
+        for (Map.Entry<String, List<String>> entry : bands.entrySet()) {
+            int minScore;
+            try {
+                minScore = Integer.parseInt(entry.getKey().trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("模板類別 " + key + " 的區間不是分數: " + entry.getKey());
+            }
+            List<String> templates = entry.getValue();
+            if (templates == null || templates.isEmpty() || templates.contains(null)) {
+                throw new IOException("模板類別 " + key + " 的區間 " + entry.getKey() + " 沒有模板");
+            }
+            sorted.put(minScore, templates.toArray(new String[0]));
+        }
+
+        int[] minScores = new int[sorted.size()];
+        String[][] templates = new String[sorted.size()][];
+        int i = 0;
+        for (Map.Entry<Integer, String[]> entry : sorted.entrySet()) {
+            minScores[i] = entry.getKey();
+            templates[i] = entry.getValue();
+            i++;
+        }
+        return new Bands(minScores, templates);
+    }
+
+    private long lastModified() {
+        try {
+            return templatesResource.lastModified();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+}
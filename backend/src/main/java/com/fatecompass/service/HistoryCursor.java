@@ -0,0 +1,57 @@
+package com.fatecompass.service;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * 算命歷史分頁游標
+ * 記錄上一頁最後一筆的 (CREATED_AT, HISTORY_ID)，下一頁從其後開始，
+ * 以 IDX_FC_FORTUNE_USER_CREATED 直接定位，不論第幾頁成本都與第一頁相同。
+ * 對外以 base64url 字串表示，客戶端不需也不應解讀內容。
+ */
+public final class HistoryCursor {
+
+    private static final int VERSION = 1;
+    private static final int LENGTH = 1 + Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final LocalDateTime createdAt;
+    private final long historyId;
+
+    public HistoryCursor(LocalDateTime createdAt, long historyId) {
+        this.createdAt = createdAt;
+        this.historyId = historyId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getHistoryId() {
+        return historyId;
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH);
+        buffer.put((byte) VERSION);
+        buffer.putLong(createdAt.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(createdAt.getNano());
+        buffer.putLong(historyId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public static HistoryCursor decode(String cursor) {
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+            if (bytes.length != LENGTH || bytes[0] != VERSION) {
+                throw new IllegalArgumentException();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, LENGTH - 1);
+            LocalDateTime createdAt = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+            return new HistoryCursor(createdAt, buffer.getLong());
+        } catch (RuntimeException e) {
+            throw new RuntimeException("無效的分頁游標");
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.fatecompass.service;
+
+import com.fatecompass.entity.FortuneHistory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 算命歷史歸檔段檔（一個月一個檔）
+ * 記錄依用戶分組，每位用戶一個區塊；區塊內按欄位連續存放（ID、類型、評分、時間、各文字欄），
+ * 同欄資料相鄰壓縮率較高，整個區塊以 Deflate 壓縮。區塊內依 (CREATED_AT, HISTORY_ID) 由新到舊，
+ * 與線上表的分頁順序相同。
+ *
+ * 格式：int magic 0x46434853 ("FCHS"), short version, 各用戶區塊,
+ * 用戶索引（依 USER_ID 排序，每筆 long 用戶ID + long 區塊位置 + int 區塊長度 + int 筆數），
+ * 結尾 long 索引位置 + int 用戶數 + int 總筆數 + int magic。
+ * 開檔只讀結尾與索引，查詢單一用戶時以二分搜尋定位後只解壓該用戶的區塊。
+ * 寫入時先寫暫存檔、fsync 後再原子搬移並 fsync 目錄，讀取端不會看到半個檔案，
+ * commit 回傳後即使當機檔案也已落地。
+ */
+public final class HistorySegmentFile {
+
+    private static final int MAGIC = 0x46434853; // "FCHS"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = Integer.BYTES + Short.BYTES;
+    private static final int FOOTER_LENGTH = Long.BYTES + Integer.BYTES * 3;
+    private static final int INDEX_ENTRY_LENGTH = Long.BYTES * 2 + Integer.BYTES * 2;
+
+    private static final FortuneHistory.FortuneType[] TYPES = FortuneHistory.FortuneType.values();
+
+    private final Path path;
+    private final long[] userIds;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] rowCounts;
+    private final int totalRows;
+
+    private HistorySegmentFile(Path path, long[] userIds, long[] offsets, int[] lengths, int[] rowCounts, int totalRows) {
+        this.path = path;
+        this.userIds = userIds;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.rowCounts = rowCounts;
+        this.totalRows = totalRows;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getTotalRows() {
+        return totalRows;
+    }
+
+    /**
+     * 開啟段檔並載入用戶索引
+     */
+    public static HistorySegmentFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH + FOOTER_LENGTH) {
+                throw new IOException("歸檔段檔不完整: " + path);
+            }
+            ByteBuffer header = readFully(channel, 0, HEADER_LENGTH);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("歸檔段檔格式錯誤: " + path);
+            }
+            int version = header.getShort() & 0xFFFF;
+            if (version != VERSION) {
+                throw new IOException("不支援的歸檔段檔版本: " + version);
+            }
+
+            ByteBuffer footer = readFully(channel, size - FOOTER_LENGTH, FOOTER_LENGTH);
+            long indexOffset = footer.getLong();
+            int userCount = footer.getInt();
+            int totalRows = footer.getInt();
+            if (footer.getInt() != MAGIC
+                    || indexOffset + (long) userCount * INDEX_ENTRY_LENGTH != size - FOOTER_LENGTH) {
+                throw new IOException("歸檔段檔結尾損毀: " + path);
+            }
+
+            ByteBuffer index = readFully(channel, indexOffset, userCount * INDEX_ENTRY_LENGTH);
+            long[] userIds = new long[userCount];
+            long[] offsets = new long[userCount];
+            int[] lengths = new int[userCount];
+            int[] rowCounts = new int[userCount];
+            for (int i = 0; i < userCount; i++) {
+                userIds[i] = index.getLong();
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+                rowCounts[i] = index.getInt();
+            }
+            return new HistorySegmentFile(path, userIds, offsets, lengths, rowCounts, totalRows);
+        }
+    }
+
+    /**
+     * 讀取單一用戶的記錄（由新到舊），沒有該用戶時回傳空清單
+     */
+    public List<FortuneHistory> read(long userId) throws IOException {
+        int i = Arrays.binarySearch(userIds, userId);
+        if (i < 0) {
+            return List.of();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readBlock(channel, i);
+        }
+    }
+
+    /**
+     * 依用戶ID順序讀取全部記錄，逐筆連同用戶ID交給 consumer
+     */
+    public void readAll(ObjLongConsumer<FortuneHistory> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = 0; i < userIds.length; i++) {
+                for (FortuneHistory history : readBlock(channel, i)) {
+                    consumer.accept(history, userIds[i]);
+                }
+            }
+        }
+    }
+
+    private List<FortuneHistory> readBlock(FileChannel channel, int i) throws IOException {
+        ByteBuffer compressed = readFully(channel, offsets[i], lengths[i]);
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(compressed.array(), 0, lengths[i])))) {
+            int rows = in.readInt();
+            if (rows != rowCounts[i]) {
+                throw new IOException("歸檔區塊筆數不符: " + path);
+            }
+            FortuneHistory[] histories = new FortuneHistory[rows];
+            for (int r = 0; r < rows; r++) {
+                histories[r] = new FortuneHistory();
+                histories[r].setHistoryId(in.readLong());
+            }
+            for (FortuneHistory history : histories) {
+                history.setFortuneType(TYPES[in.readUnsignedByte()]);
+            }
+            for (FortuneHistory history : histories) {
+                int score = in.readByte();
+                history.setScore(score < 0 ? null : score);
+            }
+            for (FortuneHistory history : histories) {
+                history.setCreatedAt(LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC));
+            }
+            for (FortuneHistory history : histories) {
+                history.setInputData(readString(in));
+            }
+            for (FortuneHistory history : histories) {
+                history.setResultData(readString(in));
+            }
+            for (FortuneHistory history : histories) {
+                history.setAnalysis(readString(in));
+            }
+            return Arrays.asList(histories);
+        }
+    }
+
+    /**
+     * 建立新的段檔；記錄須依 USER_ID 遞增、同一用戶內依 (CREATED_AT, HISTORY_ID) 由新到舊送入
+     */
+    public static Writer create(Path path) throws IOException {
+        return new Writer(path);
+    }
+
+    /**
+     * 段檔寫入器：逐筆 append，每遇到新用戶就把前一位用戶的區塊壓縮寫出
+     */
+    public static final class Writer implements AutoCloseable {
+
+        private final Path path;
+        private final Path temp;
+        private final FileChannel channel;
+        private final DataOutputStream out;
+        private final List<FortuneHistory> pending = new ArrayList<>();
+        private final ByteArrayOutputStream blockBuffer = new ByteArrayOutputStream(4096);
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private final DataOutputStream indexOut = new DataOutputStream(index);
+
+        private long position;
+        private long currentUserId = Long.MIN_VALUE;
+        private int userCount;
+        private int totalRows;
+        private boolean committed;
+
+        private Writer(Path path) throws IOException {
+            Path directory = path.toAbsolutePath().getParent();
+            if (directory != null) {
+                Files.createDirectories(directory);
+            }
+            this.path = path;
+            this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 65536));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            position = HEADER_LENGTH;
+        }
+
+        public void append(long userId, FortuneHistory history) throws IOException {
+            if (userId != currentUserId) {
+                if (userId < currentUserId) {
+                    throw new IOException("歸檔記錄須依用戶ID遞增寫入");
+                }
+                flushBlock();
+                currentUserId = userId;
+            }
+            pending.add(history);
+        }
+
+        /**
+         * 寫出索引與結尾，fsync 後原子搬移到正式檔名
+         */
+        public void commit() throws IOException {
+            flushBlock();
+            indexOut.flush();
+            index.writeTo(out);
+            out.writeLong(position);
+            out.writeInt(userCount);
+            out.writeInt(totalRows);
+            out.writeInt(MAGIC);
+            out.flush();
+            channel.force(true);
+            out.close();
+            moveDurably(temp, path);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (pending.isEmpty()) {
+                return;
+            }
+            blockBuffer.reset();
+            deflater.reset();
+            try (DataOutputStream block = new DataOutputStream(new DeflaterOutputStream(blockBuffer, deflater, 4096))) {
+                block.writeInt(pending.size());
+                for (FortuneHistory history : pending) {
+                    block.writeLong(history.getHistoryId());
+                }
+                for (FortuneHistory history : pending) {
+                    block.writeByte(history.getFortuneType().ordinal());
+                }
+                for (FortuneHistory history : pending) {
+                    block.writeByte(history.getScore() == null ? -1 : history.getScore());
+                }
+                for (FortuneHistory history : pending) {
+                    block.writeLong(history.getCreatedAt().toEpochSecond(ZoneOffset.UTC));
+                    block.writeInt(history.getCreatedAt().getNano());
+                }
+                for (FortuneHistory history : pending) {
+                    writeString(block, history.getInputData());
+                }
+                for (FortuneHistory history : pending) {
+                    writeString(block, history.getResultData());
+                }
+                for (FortuneHistory history : pending) {
+                    writeString(block, history.getAnalysis());
+                }
+            }
+
+            blockBuffer.writeTo(out);
+            indexOut.writeLong(currentUserId);
+            indexOut.writeLong(position);
+            indexOut.writeInt(blockBuffer.size());
+            indexOut.writeInt(pending.size());
+            position += blockBuffer.size();
+            userCount++;
+            totalRows += pending.size();
+            pending.clear();
+        }
+    }
+
+    /**
+     * 原子搬移（覆蓋目標）後 fsync 所在目錄，使搬移本身在當機後仍然有效
+     */
+    public static void moveDurably(Path source, Path target) throws IOException {
+        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path directory = target.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows 無法開啟目錄，其檔案系統的搬移不需另外同步目錄
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("歸檔段檔不完整");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
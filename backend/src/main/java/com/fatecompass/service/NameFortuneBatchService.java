@@ -0,0 +1,128 @@
+package com.fatecompass.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批次姓名算命服務
+ * 所有姓名的筆劃先一次算好（缺字只查詢一次），再交由有界執行緒池平行產生結果；
+ * 同時送出的任務數受 fortune.batch.parallelism 限制，完成一筆就交給 sink 輸出一筆，
+ * 不把整批結果留在記憶體中。
+ */
+@Service
+public class NameFortuneBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NameFortuneBatchService.class);
+
+    @Value("${fortune.batch.parallelism:0}")
+    private int parallelism;
+
+    @Value("${fortune.batch.max-names:5000}")
+    private int maxNames;
+
+    @Autowired
+    private FortuneService fortuneService;
+
+    private ExecutorService executor;
+
+    /**
+     * 單筆結果輸出（例如寫入串流回應）
+     */
+    @FunctionalInterface
+    public interface ResultSink {
+        void accept(Map<String, Object> result) throws IOException;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "name-fortune-batch-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    public int getMaxNames() {
+        return maxNames;
+    }
+
+    /**
+     * 平行計算一批姓名，依完成順序逐筆交給 sink
+     * 每筆結果帶有 index（對應輸入位置）與 success；單筆失敗不影響其他姓名
+     */
+    public void evaluate(List<String> fullNames, ResultSink sink) throws IOException {
+        if (fullNames.size() > maxNames) {
+            throw new RuntimeException("單次最多 " + maxNames + " 個姓名");
+        }
+
+        int[] strokes = fortuneService.calculateNameStrokes(fullNames);
+
+        CompletionService<Map<String, Object>> completion = new ExecutorCompletionService<>(executor);
+        int window = parallelism * 2;
+        int submitted = 0;
+        int completed = 0;
+
+        try {
+            while (completed < fullNames.size()) {
+                while (submitted < fullNames.size() && submitted - completed < window) {
+                    int index = submitted++;
+                    completion.submit(() -> evaluateOne(index, fullNames.get(index), strokes[index]));
+                }
+                sink.accept(completion.take().get());
+                completed++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("批次姓名算命被中斷", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("批次姓名算命失敗: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        logger.debug("批次姓名算命完成: {} 筆", completed);
+    }
+
+    private Map<String, Object> evaluateOne(int index, String fullName, int totalStrokes) {
+        Map<String, Object> result;
+        if (fullName == null || fullName.trim().isEmpty()) {
+            result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "請輸入姓名");
+        } else if (totalStrokes < 0) {
+            result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "算命失敗：無法取得筆劃數");
+        } else {
+            try {
+                result = fortuneService.evaluateNameFortune(fullName, totalStrokes);
+                result.put("success", true);
+            } catch (Exception e) {
+                result = new HashMap<>();
+                result.put("success", false);
+                result.put("message", "算命失敗：" + e.getMessage());
+            }
+        }
+        result.put("index", index);
+        return result;
+    }
+}
@@ -0,0 +1,39 @@
+package com.fatecompass.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.SplittableRandom;
+
+/**
+ * 以語意鍵雜湊為種子的隨機來源
+ * 種子 = FNV-1a 64位元雜湊（namespace、key）混入 fortune.random.seed，
+ * 再交給 SplittableRandom；不共用任何可變狀態，沒有鎖競爭。
+ * 調整 fortune.random.seed 可整體更換所有結果（例如改版時）。
+ */
+@Component
+public class SeededFortuneRandomSource implements FortuneRandomSource {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    @Value("${fortune.random.seed:0}")
+    private long globalSeed;
+
+    @Override
+    public SplittableRandom forKey(String namespace, String key) {
+        long hash = FNV_OFFSET_BASIS ^ globalSeed;
+        hash = mix(hash, namespace);
+        hash = (hash ^ '|') * FNV_PRIME;
+        hash = mix(hash, key);
+        return new SplittableRandom(hash);
+    }
+
+    private static long mix(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,57 @@
+package com.fatecompass.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 序列區塊取號
+ * 與 Hibernate pooled 最佳化器相同的規則：序列每次遞增 blockSize，
+ * 取得的值 hi 代表本節點可用 (hi - blockSize, hi] 這一段ID，用完才再向資料庫取號。
+ * 因此與實體的 @SequenceGenerator 或資料庫觸發器共用同一序列也不會撞號。
+ *
+ * 序列尚在初始值（1）時，Hibernate 會把 1 視為起點並再取一次號，這裡同樣處理。
+ */
+public class SequenceBlockAllocator {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String nextValueSql;
+    private final int blockSize;
+
+    private long next;
+    private long hi;
+    private boolean initialized;
+
+    public SequenceBlockAllocator(JdbcTemplate jdbcTemplate, String nextValueSql, int blockSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nextValueSql = nextValueSql;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * 取得下一個ID，區塊用完時查詢一次序列
+     */
+    public synchronized long next() {
+        if (!initialized) {
+            long value = fetch();
+            if (value == 1) {
+                next = 1;
+                hi = fetch();
+            } else {
+                hi = value;
+                next = value - blockSize + 1;
+            }
+            initialized = true;
+        } else if (next > hi) {
+            hi = fetch();
+            next = hi - blockSize + 1;
+        }
+        return next++;
+    }
+
+    private long fetch() {
+        Long value = jdbcTemplate.queryForObject(nextValueSql, Long.class);
+        if (value == null) {
+            throw new RuntimeException("序列取號失敗: " + nextValueSql);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,213 @@
+package com.fatecompass.service;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 干支曆法引擎
+ * 以預先計算的十二「節」交節時刻與六十甲子日序，O(1) 查出年、月、日、時四柱。
+ *
+ * 柱以 0~59 的六十甲子序號表示（0 = 甲子，59 = 癸亥），
+ * 天干 = 序號 % 10，地支 = 序號 % 12，只在回應時才轉成文字。
+ *
+ * 規則：
+ *   - 年柱以立春為界，月柱以各節為界，月干依五虎遁
+ *   - 日柱以 23:00（子初）換日
+ *   - 時柱地支 = (時 + 1) / 2 % 12，時干依五鼠遁
+ *
+ * 交節時刻表隨程式打包（calendar/jie-terms.bin，由 cnchar-service/scripts/export-jie-table.js
+ * 以壽星曆 VSOP87 節氣表匯出），以東八區時間存成自 1900-01-01 00:00 起算的分鐘數（進位到整分），
+ * 類別載入時讀進 int[]。支援範圍為 1900 至 2100 年。
+ */
+public final class SexagenaryCalendar {
+
+    public static final int MIN_YEAR = 1900;
+    public static final int MAX_YEAR = 2100;
+
+    private static final String[] HEAVENLY_STEMS = {"甲", "乙", "丙", "丁", "戊", "己", "庚", "辛", "壬", "癸"};
+    private static final String[] EARTHLY_BRANCHES = {"子", "丑", "寅", "卯", "辰", "巳", "午", "未", "申", "酉", "戌", "亥"};
+
+    private static final String TABLE_RESOURCE = "/calendar/jie-terms.bin";
+    private static final int MAGIC = 0x46434A51; // "FCJQ"
+    private static final int VERSION = 1;
+
+    // 1900-01-01（東八區），交節分鐘數的起點
+    private static final long EPOCH_DAY_1900 = LocalDate.of(1900, 1, 1).toEpochDay();
+
+    // 表格起始年份（含前後各一年，1900年初與2100年底也能查到相鄰的節）
+    private static final int FIRST_TABLE_YEAR;
+
+    // 每年12個節（小寒、立春、驚蟄…大雪）的交節分鐘數，索引為 (年 - FIRST_TABLE_YEAR) * 12 + 節序
+    private static final int[] JIE_MINUTES;
+
+    static {
+        try (InputStream resource = SexagenaryCalendar.class.getResourceAsStream(TABLE_RESOURCE)) {
+            if (resource == null) {
+                throw new IOException("找不到節氣表: " + TABLE_RESOURCE);
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(resource));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("節氣表格式錯誤");
+            }
+            int version = in.readUnsignedShort();
+            if (version != VERSION) {
+                throw new IOException("不支援的節氣表版本: " + version);
+            }
+
+            int firstYear = in.readUnsignedShort();
+            int years = in.readUnsignedShort();
+            if (firstYear >= MIN_YEAR || firstYear + years <= MAX_YEAR + 1) {
+                throw new IOException("節氣表未涵蓋 " + MIN_YEAR + "~" + MAX_YEAR + " 年");
+            }
+            int[] minutes = new int[years * 12];
+            for (int i = 0; i < minutes.length; i++) {
+                minutes[i] = in.readInt();
+            }
+
+            FIRST_TABLE_YEAR = firstYear;
+            JIE_MINUTES = minutes;
+        } catch (IOException e) {
+            throw new RuntimeException("載入節氣表失敗: " + e.getMessage(), e);
+        }
+    }
+
+    private SexagenaryCalendar() {
+    }
+
+    /**
+     * 計算四柱
+     *
+     * @param dateTime 出生時間（東八區當地時間）
+     * @return {年柱, 月柱, 日柱, 時柱} 的六十甲子序號
+     */
+    public static int[] pillars(LocalDateTime dateTime) {
+        return new int[] {
+                yearPillar(dateTime), monthPillar(dateTime), dayPillar(dateTime), hourPillar(dateTime)
+        };
+    }
+
+    /**
+     * 命盤緩存鍵：以（子初換日後的）日期與時辰打包成 long，
+     * 再加上「是否已過當月的節」一個位元，使交節所在的時辰前後分成兩個鍵；
+     * 鍵相同的時間四柱必定相同
+     */
+    public static long chartKey(LocalDateTime dateTime) {
+        int minutes = toMinutes(dateTime);
+        int afterJie = minutes >= jieMinutes(dateTime.getYear(), dateTime.getMonthValue() - 1) ? 1 : 0;
+        LocalDate date = dateTime.getHour() >= 23 ? dateTime.toLocalDate().plusDays(1) : dateTime.toLocalDate();
+        int hourBranch = (dateTime.getHour() + 1) / 2 % 12;
+        return ((date.toEpochDay() - EPOCH_DAY_1900) * 12 + hourBranch) * 2 + afterJie;
+    }
+
+    /**
+     * 年柱：立春前屬上一年
+     */
+    public static int yearPillar(LocalDateTime dateTime) {
+        return Math.floorMod(solarYear(dateTime) - 4, 60);
+    }
+
+    /**
+     * 月柱：依所在的節決定月支，月干依五虎遁
+     */
+    public static int monthPillar(LocalDateTime dateTime) {
+        int minutes = toMinutes(dateTime);
+        int year = dateTime.getYear();
+        // 第 m 月的節序為 m-1（一月小寒、二月立春…十二月大雪）
+        int jie = dateTime.getMonthValue() - 1;
+        if (minutes < jieMinutes(year, jie)) {
+            jie--;
+        }
+        // 節序 k 開始的月支：小寒→丑，立春→寅…大雪→子
+        int branch = Math.floorMod(jie + 1, 12);
+
+        int yearStem = stem(yearPillar(dateTime));
+        int monthsFromYin = Math.floorMod(branch - 2, 12);
+        int stem = ((yearStem % 5) * 2 + 2 + monthsFromYin) % 10;
+        return index(stem, branch);
+    }
+
+    /**
+     * 日柱：23:00 起算次日
+     */
+    public static int dayPillar(LocalDateTime dateTime) {
+        LocalDate date = dateTime.getHour() >= 23 ? dateTime.toLocalDate().plusDays(1) : dateTime.toLocalDate();
+        // 1970-01-01 為辛巳日（序號17）
+        return (int) Math.floorMod(date.toEpochDay() + 17, 60L);
+    }
+
+    /**
+     * 時柱：時干依五鼠遁，由當日（已考慮子初換日）日干推得
+     */
+    public static int hourPillar(LocalDateTime dateTime) {
+        int branch = (dateTime.getHour() + 1) / 2 % 12;
+        int dayStem = stem(dayPillar(dateTime));
+        int stem = ((dayStem % 5) * 2 + branch) % 10;
+        return index(stem, branch);
+    }
+
+    /**
+     * 立春前的日期屬於上一個干支年
+     */
+    public static int solarYear(LocalDateTime dateTime) {
+        int year = dateTime.getYear();
+        return toMinutes(dateTime) < jieMinutes(year, 1) ? year - 1 : year;
+    }
+
+    /**
+     * 是否在節氣表支援的年份範圍內
+     */
+    public static boolean supports(LocalDateTime dateTime) {
+        int year = dateTime.getYear();
+        return year >= MIN_YEAR && year <= MAX_YEAR;
+    }
+
+    public static int stem(int pillar) {
+        return pillar % 10;
+    }
+
+    public static int branch(int pillar) {
+        return pillar % 12;
+    }
+
+    /**
+     * 由天干、地支序號求六十甲子序號
+     */
+    public static int index(int stem, int branch) {
+        return Math.floorMod(6 * stem - 5 * branch, 60);
+    }
+
+    public static String stemName(int stem) {
+        return HEAVENLY_STEMS[stem];
+    }
+
+    public static String branchName(int branch) {
+        return EARTHLY_BRANCHES[branch];
+    }
+
+    /**
+     * 柱的文字表示，例如 0 → "甲子"
+     */
+    public static String name(int pillar) {
+        return HEAVENLY_STEMS[stem(pillar)] + EARTHLY_BRANCHES[branch(pillar)];
+    }
+
+    private static int jieMinutes(int year, int jie) {
+        if (jie < 0) {
+            year--;
+            jie += 12;
+        }
+        return JIE_MINUTES[(year - FIRST_TABLE_YEAR) * 12 + jie];
+    }
+
+    private static int toMinutes(LocalDateTime dateTime) {
+        if (!supports(dateTime)) {
+            throw new RuntimeException("僅支援" + MIN_YEAR + "至" + MAX_YEAR + "年的干支計算");
+        }
+        long days = dateTime.toLocalDate().toEpochDay() - EPOCH_DAY_1900;
+        return (int) (days * 1440 + dateTime.getHour() * 60 + dateTime.getMinute());
+    }
+}
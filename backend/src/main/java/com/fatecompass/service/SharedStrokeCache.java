@@ -0,0 +1,159 @@
+package com.fatecompass.service;
+
+import com.fatecompass.entity.StrokeCacheEntry;
+import com.fatecompass.repository.StrokeCacheRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 跨節點共享筆劃緩存（FC_STROKE_CACHE）
+ * 位於本機緩存與cnchar之間：本機未命中的字先以單次IN查詢讀取此表，
+ * 從cnchar學到的新字則先排入佇列，由排程批次寫回，不佔用請求執行緒。
+ * 資料庫不可用時只記錄警告，查詢視為全部未命中。
+ */
+@Component
+public class SharedStrokeCache {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SharedStrokeCache.class);
+    
+    // Oracle IN清單上限為1000，大量查詢分段送出
+    private static final int MAX_IN_LIST = 500;
+    
+    @Value("${cnchar.cache.shared.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${cnchar.cache.shared.max-pending:10000}")
+    private int maxPending;
+    
+    @Autowired
+    private StrokeCacheRepository strokeCacheRepository;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    // 待寫回的字（碼位 -> 筆劃數），同一字只保留一筆
+    private final ConcurrentHashMap<Integer, Integer> pending = new ConcurrentHashMap<>();
+    
+    private Counter hitCounter;
+    private Counter missCounter;
+    private Counter writeCounter;
+    
+    @PostConstruct
+    public void init() {
+        hitCounter = meterRegistry.counter("cnchar.strokes.shared.hits");
+        missCounter = meterRegistry.counter("cnchar.strokes.shared.misses");
+        writeCounter = meterRegistry.counter("cnchar.strokes.shared.writes");
+        meterRegistry.gaugeMapSize("cnchar.strokes.shared.pending", Collections.emptyList(), pending);
+    }
+    
+    /**
+     * 批次查詢共享緩存
+     *
+     * @param codePoints 要查詢的碼位
+     * @return 已存在於共享緩存的字（碼位 -> 筆劃數）
+     */
+    public Map<Integer, Integer> findAll(Collection<Integer> codePoints) {
+        if (!enabled || codePoints.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        
+        Map<Integer, Integer> strokes = new HashMap<>();
+        List<Integer> keys = new ArrayList<>(codePoints);
+        try {
+            for (int from = 0; from < keys.size(); from += MAX_IN_LIST) {
+                List<Integer> chunk = keys.subList(from, Math.min(from + MAX_IN_LIST, keys.size()));
+                for (StrokeCacheEntry entry : strokeCacheRepository.findByCharCodeIn(chunk)) {
+                    strokes.put(entry.getCharCode(), entry.getStrokes());
+                }
+            }
+        } catch (DataAccessException e) {
+            logger.warn("查詢共享筆劃緩存失敗: {}", e.getMessage());
+        }
+        
+        hitCounter.increment(strokes.size());
+        missCounter.increment(codePoints.size() - strokes.size());
+        return strokes;
+    }
+    
+    /**
+     * 排入待寫回佇列，佇列已滿時直接丟棄（下次學到時會再排入）
+     */
+    public void enqueue(int codePoint, int strokes) {
+        if (!enabled || strokes <= 0) {
+            return;
+        }
+        if (pending.size() >= maxPending) {
+            logger.debug("共享筆劃緩存寫回佇列已滿，略過: {}", codePoint);
+            return;
+        }
+        pending.putIfAbsent(codePoint, strokes);
+    }
+    
+    /**
+     * 定期將佇列中的字批次寫回資料庫
+     */
+    @Scheduled(fixedDelayString = "${cnchar.cache.shared.write-interval-ms:2000}")
+    public void writeBack() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        List<StrokeCacheEntry> entries = new ArrayList<>(pending.size());
+        for (Integer codePoint : new ArrayList<>(pending.keySet())) {
+            Integer strokes = pending.remove(codePoint);
+            if (strokes != null) {
+                entries.add(new StrokeCacheEntry(codePoint, strokes));
+            }
+        }
+        
+        try {
+            strokeCacheRepository.saveAll(entries);
+            writeCounter.increment(entries.size());
+            logger.debug("共享筆劃緩存寫回: {} 個字", entries.size());
+        } catch (DataIntegrityViolationException e) {
+            // 其他節點已寫入部分字，改為逐筆寫入並略過重複
+            saveIndividually(entries);
+        } catch (DataAccessException e) {
+            logger.warn("寫回共享筆劃緩存失敗，{} 個字將於下次重試: {}", entries.size(), e.getMessage());
+            for (StrokeCacheEntry entry : entries) {
+                enqueue(entry.getCharCode(), entry.getStrokes());
+            }
+        }
+    }
+    
+    private void saveIndividually(List<StrokeCacheEntry> entries) {
+        for (StrokeCacheEntry entry : entries) {
+            try {
+                strokeCacheRepository.save(new StrokeCacheEntry(entry.getCharCode(), entry.getStrokes()));
+                writeCounter.increment();
+            } catch (DataIntegrityViolationException e) {
+                logger.debug("共享筆劃緩存已存在: {}", entry.getCharCode());
+            } catch (DataAccessException e) {
+                logger.warn("寫回共享筆劃緩存失敗: {}", e.getMessage());
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void flush() {
+        writeBack();
+    }
+}
@@ -0,0 +1,106 @@
+package com.fatecompass.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * 內嵌繁體中文筆劃字典
+ * 啟動時載入隨程式打包的筆劃表，以CJK區塊為單位存成 byte[]，查詢時直接以碼位索引，不需任何網路呼叫。
+ * 筆劃表只能由 cnchar-service 的 npm run export-strokes（export-stroke-table.js，以cnchar-trad計算）產生，
+ * 因此與cnchar微服務的結果一致；建置前未產生筆劃表時字典視為未載入，筆劃一律查詢cnchar。
+ */
+@Component
+public class StrokeDictionary {
+
+    private static final Logger logger = LoggerFactory.getLogger(StrokeDictionary.class);
+
+    private static final int MAGIC = 0x46435354; // "FCST"
+    private static final int VERSION = 1;
+
+    @Value("${cnchar.stroke.dictionary:classpath:strokes/cjk-strokes.bin}")
+    private Resource dictionaryResource;
+
+    // 各區塊起始碼位、長度與筆劃表
+    private int[] blockStarts = new int[0];
+    private int[] blockLengths = new int[0];
+    private byte[][] blockStrokes = new byte[0][];
+
+    private volatile boolean loaded = false;
+
+    @PostConstruct
+    public void load() {
+        if (!dictionaryResource.exists()) {
+            logger.warn("未打包內嵌筆劃字典 {}（於 cnchar-service 執行 npm run export-strokes 產生），筆劃一律查詢cnchar",
+                    dictionaryResource.getDescription());
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(dictionaryResource.getInputStream()))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("筆劃表格式錯誤");
+            }
+            int version = in.readUnsignedShort();
+            if (version != VERSION) {
+                throw new IOException("不支援的筆劃表版本: " + version);
+            }
+
+            int blockCount = in.readUnsignedShort();
+            int[] starts = new int[blockCount];
+            int[] lengths = new int[blockCount];
+            byte[][] strokes = new byte[blockCount][];
+            int known = 0;
+
+            for (int i = 0; i < blockCount; i++) {
+                starts[i] = in.readInt();
+                lengths[i] = in.readInt();
+                strokes[i] = new byte[lengths[i]];
+                in.readFully(strokes[i]);
+                for (byte value : strokes[i]) {
+                    if (value > 0) {
+                        known++;
+                    }
+                }
+            }
+
+            this.blockStarts = starts;
+            this.blockLengths = lengths;
+            this.blockStrokes = strokes;
+            this.loaded = true;
+            logger.info("內嵌筆劃字典已載入: {} 個區塊, {} 個字", blockCount, known);
+
+        } catch (IOException e) {
+            logger.error("載入內嵌筆劃字典失敗，將改用cnchar服務: {}", e.getMessage());
+            this.loaded = false;
+        }
+    }
+
+    /**
+     * 查詢單一碼位的筆劃數
+     *
+     * @param codePoint Unicode碼位
+     * @return 筆劃數，字典中沒有時回傳 0
+     */
+    public int getStrokes(int codePoint) {
+        for (int i = 0; i < blockStarts.length; i++) {
+            int offset = codePoint - blockStarts[i];
+            if (offset >= 0 && offset < blockLengths[i]) {
+                return blockStrokes[i][offset];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 字典是否已成功載入
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+}
@@ -0,0 +1,78 @@
+package com.fatecompass.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * 筆劃緩存快照檔
+ * 格式：int magic 0x46435343 ("FCSC"), short version, int 筆數,
+ * 之後每筆為 int 碼位 + byte 筆劃數（每字5 bytes）。
+ * 寫入時先寫暫存檔再原子搬移，避免程序中斷留下半個檔案。
+ */
+public final class StrokeSnapshotFile {
+
+    private static final int MAGIC = 0x46435343; // "FCSC"
+    private static final int VERSION = 1;
+
+    private StrokeSnapshotFile() {
+    }
+
+    /**
+     * 寫入快照
+     */
+    public static void write(Path path, Map<Integer, Integer> strokes) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(strokes.size());
+            for (Map.Entry<Integer, Integer> entry : strokes.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeByte(entry.getValue());
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 讀取快照，逐筆交給 consumer；檔案不存在時回傳 0
+     *
+     * @return 讀入筆數
+     */
+    public static int read(Path path, BiConsumer<Integer, Integer> consumer) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("筆劃快照格式錯誤");
+            }
+            int version = in.readUnsignedShort();
+            if (version != VERSION) {
+                throw new IOException("不支援的筆劃快照版本: " + version);
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int codePoint = in.readInt();
+                int strokes = in.readUnsignedByte();
+                consumer.accept(codePoint, strokes);
+            }
+            return count;
+        }
+    }
+}
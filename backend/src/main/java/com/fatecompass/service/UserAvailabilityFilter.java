@@ -0,0 +1,199 @@
+package com.fatecompass.service;
+
+import com.fatecompass.cache.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * 已使用的用戶名與電子郵件布隆過濾器
+ * 註冊表單每次輸入都會查詢可用性；過濾器回答「一定不存在」時直接視為可用，
+ * 只有可能存在時才以資料庫確認，因此不會把已使用的名稱誤報為可用（本節點所知範圍內）。
+ *
+ * 應用就緒後以 JDBC 游標掃描 FC_USERS 建立，本節點註冊時即時加入。
+ * 多節點部署時其他節點的註冊由增量同步納入：每 sync-interval-ms 以 CREATED_AT 索引讀取
+ * 上次同步以來（往前多看 sync-overlap，涵蓋節點間時鐘偏差與較晚提交的交易）新增的用戶，
+ * 因此其他節點剛註冊的名稱最多約一個同步間隔內可能被報為可用；註冊時仍以資料庫檢查為準。
+ * 另外定期整批重建，依目前用戶數重新決定大小，並補上提交晚於重疊時間的極少數記錄。
+ * 尚未建立完成或停用時一律回傳「可能存在」，查詢退回資料庫。
+ */
+@Component
+public class UserAvailabilityFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserAvailabilityFilter.class);
+
+    private static final String SELECT_USERS_SQL = "SELECT USERNAME, EMAIL FROM FC_USERS";
+    private static final String SELECT_USERS_SINCE_SQL = "SELECT USERNAME, EMAIL FROM FC_USERS WHERE CREATED_AT >= ?";
+
+    @Value("${user.availability.filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${user.availability.filter.expected-insertions:100000}")
+    private long expectedInsertions;
+
+    @Value("${user.availability.filter.fpp:0.01}")
+    private double fpp;
+
+    @Value("${user.availability.filter.sync-overlap:5m}")
+    private Duration syncOverlap;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 目前使用中的過濾器，重建完成後整組替換
+    private volatile Filters current;
+
+    // 重建中的過濾器，期間的註冊同時加入，避免替換後遺漏
+    private volatile Filters building;
+
+    // 目前過濾器已涵蓋的 CREATED_AT 上界（本節點時鐘），增量同步由此往前 syncOverlap 開始讀取
+    private LocalDateTime syncedUntil;
+
+    private Counter filteredCounter;
+    private Counter queriedCounter;
+
+    @PostConstruct
+    public void init() {
+        filteredCounter = meterRegistry.counter("user.availability.checks", "result", "filtered");
+        queriedCounter = meterRegistry.counter("user.availability.checks", "result", "queried");
+    }
+
+    /**
+     * 用戶名是否可能已被使用；false 表示一定未被使用
+     */
+    public boolean mightContainUsername(String username) {
+        Filters filters = current;
+        return record(filters == null || filters.usernames.mightContain(username));
+    }
+
+    /**
+     * 電子郵件是否可能已被使用；false 表示一定未被使用
+     */
+    public boolean mightContainEmail(String email) {
+        Filters filters = current;
+        return record(filters == null || filters.emails.mightContain(email));
+    }
+
+    /**
+     * 記錄新註冊的用戶名與電子郵件
+     */
+    public void add(String username, String email) {
+        // 先讀 building 再讀 current：重建在兩次讀取之間完成時，current 已是新的過濾器，不會兩邊都錯過
+        Filters next = building;
+        Filters filters = current;
+        if (next != null) {
+            next.add(username, email);
+        }
+        if (filters != null && filters != next) {
+            filters.add(username, email);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * 增量同步其他節點新註冊的用戶
+     */
+    @Scheduled(fixedDelayString = "${user.availability.filter.sync-interval-ms:5000}",
+               initialDelayString = "${user.availability.filter.sync-interval-ms:5000}")
+    public synchronized void sync() {
+        Filters filters = current;
+        if (!enabled || filters == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            jdbcTemplate.query(SELECT_USERS_SINCE_SQL,
+                    rs -> {
+                        filters.add(rs.getString("USERNAME"), rs.getString("EMAIL"));
+                    },
+                    Timestamp.valueOf(syncedUntil.minus(syncOverlap)));
+            syncedUntil = now;
+        } catch (DataAccessException e) {
+            // 下次同步仍由原本的位置開始
+            logger.warn("同步用戶名/電子郵件過濾器失敗: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定期重建，依目前用戶數重新決定大小
+     */
+    @Scheduled(fixedDelayString = "${user.availability.filter.rebuild-interval-ms:3600000}",
+               initialDelayString = "${user.availability.filter.rebuild-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        // 掃描開始後才提交的註冊由之後的增量同步補上
+        LocalDateTime scanStart = LocalDateTime.now();
+        try {
+            Long userCount = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM FC_USERS", Long.class);
+            // 預留一倍空間給下次重建前的新註冊
+            long capacity = Math.max(expectedInsertions, userCount == null ? 0 : userCount * 2);
+            Filters next = new Filters(capacity, fpp);
+            building = next;
+
+            jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(SELECT_USERS_SQL);
+                ps.setFetchSize(1000);
+                return ps;
+            }, rs -> {
+                next.add(rs.getString("USERNAME"), rs.getString("EMAIL"));
+            });
+
+            current = next;
+            syncedUntil = scanStart;
+            logger.info("用戶名/電子郵件過濾器已建立: {} 筆, 估計誤判率 {}, 耗時 {}ms",
+                    next.usernames.getInsertions(), String.format("%.4f", next.usernames.expectedFpp()),
+                    System.currentTimeMillis() - start);
+        } catch (DataAccessException e) {
+            // 保留舊的過濾器（或維持未建立），查詢照常可退回資料庫
+            logger.warn("建立用戶名/電子郵件過濾器失敗: {}", e.getMessage());
+        } finally {
+            building = null;
+        }
+    }
+
+    private boolean record(boolean mightContain) {
+        (mightContain ? queriedCounter : filteredCounter).increment();
+        return mightContain;
+    }
+
+    private static final class Filters {
+        private final BloomFilter usernames;
+        private final BloomFilter emails;
+
+        private Filters(long capacity, double fpp) {
+            this.usernames = new BloomFilter(capacity, fpp);
+            this.emails = new BloomFilter(capacity, fpp);
+        }
+
+        private void add(String username, String email) {
+            usernames.add(username);
+            emails.add(email);
+        }
+    }
+}
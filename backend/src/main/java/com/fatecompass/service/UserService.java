@@ -1,11 +1,16 @@
 package com.fatecompass.service;
 
+import com.fatecompass.cache.BoundedFrequencyCache;
 import com.fatecompass.entity.User;
 import com.fatecompass.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.Optional;
 
 /**
@@ -20,6 +25,28 @@ public class UserService {
     @Autowired
     private PasswordEncoder passwordEncoder;
     
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private UserAvailabilityFilter availabilityFilter;
+    
+    @Value("${user.cache.maximum-size:10000}")
+    private int cacheMaximumSize;
+    
+    @Value("${user.cache.expire-after-write:5m}")
+    private Duration cacheExpireAfterWrite;
+    
+    // 用戶緩存（鍵為USER_ID），每個算命請求都要驗證用戶，避免每次都以主鍵查詢資料庫。
+    // 存放的是不含關聯集合的脫離副本；本節點更新時立即失效，其他節點的更新最遲於過期時間後生效
+    private BoundedFrequencyCache<Long, User> userCache;
+    
+    @PostConstruct
+    public void initUserCache() {
+        userCache = new BoundedFrequencyCache<>(cacheMaximumSize, cacheExpireAfterWrite);
+        userCache.bindTo(meterRegistry, "users");
+    }
+    
     /**
      * 用戶註冊
      */
@@ -41,7 +68,9 @@ public class UserService {
         user.setEmail(email);
         user.setIsActive(true);
         
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        availabilityFilter.add(saved.getUsername(), saved.getEmail());
+        return saved;
     }
     
     /**
@@ -68,30 +97,63 @@ public class UserService {
     }
     
     /**
-     * 根據ID查找用戶
+     * 根據ID查找用戶（經由用戶緩存）
+     * 每次回傳新的副本，呼叫端修改後須經 updateUser 儲存，不會影響緩存內容
      */
     public Optional<User> findById(Long userId) {
-        return userRepository.findById(userId);
+        if (userId == null) {
+            return userRepository.findById(userId);
+        }
+        User cached = userCache.get(userId, id -> userRepository.findById(id).map(UserService::copyOf).orElse(null));
+        return Optional.ofNullable(cached).map(UserService::copyOf);
     }
     
     /**
      * 更新用戶資料
      */
     public User updateUser(User user) {
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        userCache.invalidate(saved.getUserId());
+        return saved;
     }
     
     /**
-     * 檢查用戶名是否可用
+     * 檢查用戶名是否可用（過濾器判定一定未使用時不查詢資料庫）
      */
     public boolean isUsernameAvailable(String username) {
+        if (!availabilityFilter.mightContainUsername(username)) {
+            return true;
+        }
         return !userRepository.existsByUsername(username);
     }
     
     /**
-     * 檢查電子郵件是否可用
+     * 檢查電子郵件是否可用（過濾器判定一定未使用時不查詢資料庫）
      */
     public boolean isEmailAvailable(String email) {
+        if (!availabilityFilter.mightContainEmail(email)) {
+            return true;
+        }
         return !userRepository.existsByEmail(email);
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 複製用戶基本資料（不含算命歷史集合）
+     */
+    private static User copyOf(User user) {
+        User copy = new User();
+        copy.setUserId(user.getUserId());
+        copy.setUsername(user.getUsername());
+        copy.setPassword(user.getPassword());
+        copy.setEmail(user.getEmail());
+        copy.setRealName(user.getRealName());
+        copy.setPhone(user.getPhone());
+        copy.setGender(user.getGender());
+        copy.setBirthDate(user.getBirthDate());
+        copy.setBirthPlace(user.getBirthPlace());
+        copy.setIsActive(user.getIsActive());
+        copy.setCreatedAt(user.getCreatedAt());
+        copy.setUpdatedAt(user.getUpdatedAt());
+        return copy;
+    }
+}
\ No newline at end of file
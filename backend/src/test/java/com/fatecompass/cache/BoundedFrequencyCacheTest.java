@@ -0,0 +1,91 @@
+package com.fatecompass.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 有界頻率緩存測試：載入與失效交錯、容量上限、CLOCK 頻率淘汰
+ */
+class BoundedFrequencyCacheTest {
+
+    @Test
+    void loadRacingWithInvalidateIsNotRetained() throws Exception {
+        BoundedFrequencyCache<Long, String> cache = new BoundedFrequencyCache<>(100, Duration.ofMinutes(5));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch saved = new CountDownLatch(1);
+        String[] returned = new String[1];
+
+        // 載入讀到舊值後停住，期間另一執行緒更新並失效
+        Thread reader = new Thread(() -> returned[0] = cache.get(1L, key -> {
+            loading.countDown();
+            await(saved);
+            return "old";
+        }));
+        reader.start();
+        loading.await();
+        cache.invalidate(1L);
+        saved.countDown();
+        reader.join();
+
+        assertEquals("old", returned[0]);
+        assertNull(cache.getIfPresent(1L));
+        assertEquals(0, cache.size());
+        assertEquals("new", cache.get(1L, key -> "new"));
+        assertEquals("new", cache.getIfPresent(1L));
+    }
+
+    @Test
+    void loadDoesNotOverwriteConcurrentPut() {
+        BoundedFrequencyCache<Long, String> cache = new BoundedFrequencyCache<>(100, null);
+        String loaded = cache.get(1L, key -> {
+            cache.put(key, "fresh");
+            return "loaded";
+        });
+        assertEquals("loaded", loaded);
+        assertEquals("fresh", cache.getIfPresent(1L));
+    }
+
+    @Test
+    void evictionKeepsSizeBound() {
+        BoundedFrequencyCache<Integer, Integer> cache = new BoundedFrequencyCache<>(100, null);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, i);
+            assertTrue(cache.size() <= 100, "size " + cache.size() + " after " + i);
+        }
+        AtomicInteger entries = new AtomicInteger();
+        cache.forEach((key, value) -> entries.incrementAndGet());
+        assertEquals(100, entries.get());
+        assertEquals(9_900, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    void frequentlyHitEntrySurvivesScan() {
+        BoundedFrequencyCache<Integer, Integer> cache = new BoundedFrequencyCache<>(100, null);
+        cache.put(-1, -1);
+        for (int i = 0; i < 5_000; i++) {
+            if (i % 50 == 0) {
+                cache.getIfPresent(-1);
+            }
+            // 每個掃描鍵只寫入一次，從未被讀取
+            cache.put(i, i);
+        }
+        assertEquals(-1, cache.getIfPresent(-1));
+        assertNull(cache.getIfPresent(0));
+        assertTrue(cache.size() <= 100);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
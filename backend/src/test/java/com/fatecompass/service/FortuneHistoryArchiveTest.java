@@ -0,0 +1,185 @@
+package com.fatecompass.service;
+
+import com.fatecompass.entity.FortuneHistory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.fatecompass.service.HistorySegmentFileTest.assertSameRecord;
+import static com.fatecompass.service.HistorySegmentFileTest.history;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 冷歷史歸檔測試（H2 Oracle 模式，無分區，走範圍刪除）：
+ * 搬移後線上表不再有該月資料、同月重歸檔以ID去重、中斷留下的暫存段檔依線上資料決定捨棄或補上
+ */
+class FortuneHistoryArchiveTest {
+
+    @TempDir
+    Path directory;
+
+    private JdbcTemplate jdbcTemplate;
+    private FortuneHistoryArchive archive;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=Oracle;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE FC_FORTUNE_HISTORY (HISTORY_ID NUMBER(10) PRIMARY KEY, "
+                + "USER_ID NUMBER(10) NOT NULL, FORTUNE_TYPE VARCHAR2(20) NOT NULL, INPUT_DATA VARCHAR2(1000), "
+                + "RESULT_DATA CLOB, SCORE NUMBER(3), ANALYSIS CLOB, CREATED_AT TIMESTAMP NOT NULL)");
+        archive = newArchive();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    @Test
+    void movesAgedMonthsOutOfLiveTable() throws IOException {
+        FortuneHistory older = history(1, FortuneHistory.FortuneType.NAME, "2020-01-05T10:00:00.123456",
+                "王小明", "@v2:AQID", 86, null);
+        FortuneHistory newer = history(2, FortuneHistory.FortuneType.BAZI, "2020-01-20T10:00",
+                "{}", "@v2:BAUG", null, "分析");
+        insert(1, older);
+        insert(1, newer);
+        insert(2, history(3, FortuneHistory.FortuneType.DAILY, "2020-01-07T00:00", "2020-01-07", null, 70, null));
+        insert(1, history(4, FortuneHistory.FortuneType.NAME, "2020-02-01T00:00", "陳大文", null, 61, null));
+        insert(1, history(5, FortuneHistory.FortuneType.NAME, LocalDateTime.now().toString(), "李美玲", null, 77, null));
+
+        archive.archiveAgedMonths();
+
+        assertEquals(List.of(5L), liveIds());
+        assertTrue(Files.exists(directory.resolve("history-2020-01.seg")));
+        assertTrue(Files.exists(directory.resolve("history-2020-02.seg")));
+        assertEquals(List.of("history-2020-01.seg", "history-2020-02.seg"), archiveFiles());
+
+        List<FortuneHistory> user1 = archive.findAfter(1, null, null, 10);
+        assertEquals(List.of(4L, 2L, 1L), ids(user1));
+        assertSameRecord(newer, user1.get(1));
+        assertSameRecord(older, user1.get(2));
+        assertEquals(List.of(3L), ids(archive.findAfter(2, null, null, 10)));
+
+        // 其他節點由目錄載入
+        FortuneHistory detail = newArchive().findDetail(1, 1).orElseThrow();
+        assertSameRecord(older, detail);
+    }
+
+    @Test
+    void rearchivingMonthDeduplicatesById() throws IOException {
+        insert(1, history(1, FortuneHistory.FortuneType.NAME, "2020-01-05T10:00", "a", null, 50, null));
+        insert(1, history(2, FortuneHistory.FortuneType.NAME, "2020-01-06T10:00", "b", null, 60, null));
+        archive.archiveAgedMonths();
+
+        // 同一筆又出現在線上表，另有一筆晚到的記錄
+        insert(1, history(2, FortuneHistory.FortuneType.NAME, "2020-01-06T10:00", "b", null, 60, null));
+        insert(1, history(9, FortuneHistory.FortuneType.NAME, "2020-01-03T10:00", "late", null, 70, null));
+        archive.archiveAgedMonths();
+
+        assertTrue(liveIds().isEmpty());
+        assertEquals(3, HistorySegmentFile.open(directory.resolve("history-2020-01.seg")).getTotalRows());
+        List<Long> exported = new ArrayList<>();
+        archive.forEachOlder(1, history -> exported.add(history.getHistoryId()));
+        assertEquals(List.of(2L, 1L, 9L), exported);
+        assertEquals(List.of("history-2020-01.seg"), archiveFiles());
+    }
+
+    @Test
+    void discardsStagedSegmentWhoseRowsAreStillLive() throws IOException {
+        insert(1, history(1, FortuneHistory.FortuneType.NAME, "2020-01-05T10:00", "live", null, 50, null));
+        insert(1, history(2, FortuneHistory.FortuneType.NAME, "2020-01-06T10:00", "live", null, 60, null));
+        // 上次寫好暫存檔後、刪除線上資料前中斷
+        writeSegment(directory.resolve("history-2020-01.seg.staged"), 1,
+                history(2, FortuneHistory.FortuneType.NAME, "2020-01-06T10:00", "staged", null, 60, null),
+                history(1, FortuneHistory.FortuneType.NAME, "2020-01-05T10:00", "staged", null, 50, null));
+
+        archive.archiveAgedMonths();
+
+        assertTrue(liveIds().isEmpty());
+        assertEquals(List.of("history-2020-01.seg"), archiveFiles());
+        List<FortuneHistory> rows = archive.findAfter(1, null, null, 10);
+        assertEquals(List.of(2L, 1L), ids(rows));
+        assertEquals("live", rows.get(0).getInputData());
+        assertEquals("live", rows.get(1).getInputData());
+    }
+
+    @Test
+    void publishesStagedSegmentWhoseRowsWereRemoved() throws IOException {
+        FortuneHistory staged = history(20, FortuneHistory.FortuneType.BAZI, "2020-03-10T10:00:00.5",
+                "{}", "@v2:AQID", 80, null);
+        // 上次已刪除線上資料、改名前中斷：暫存檔是唯一的副本
+        writeSegment(directory.resolve("history-2020-03.seg.staged"), 1, staged);
+
+        archive.archiveAgedMonths();
+
+        assertEquals(List.of("history-2020-03.seg"), archiveFiles());
+        assertSameRecord(staged, archive.findDetail(1, 20).orElseThrow());
+    }
+
+    @Test
+    void stagedSegmentIsNotServedBeforePublish() throws IOException {
+        writeSegment(directory.resolve("history-2020-03.seg.staged"), 1,
+                history(20, FortuneHistory.FortuneType.NAME, "2020-03-10T10:00", "x", null, 80, null));
+        archive.refreshSegments();
+
+        assertTrue(archive.isEmpty());
+        assertFalse(archive.findDetail(1, 20).isPresent());
+    }
+
+    private FortuneHistoryArchive newArchive() {
+        FortuneHistoryArchive created = new FortuneHistoryArchive();
+        ReflectionTestUtils.setField(created, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(created, "archivePath", directory.toString());
+        ReflectionTestUtils.setField(created, "enabled", true);
+        ReflectionTestUtils.setField(created, "afterMonths", 0);
+        created.init();
+        return created;
+    }
+
+    private void insert(long userId, FortuneHistory history) {
+        jdbcTemplate.update("INSERT INTO FC_FORTUNE_HISTORY (HISTORY_ID, USER_ID, FORTUNE_TYPE, INPUT_DATA, RESULT_DATA, "
+                        + "SCORE, ANALYSIS, CREATED_AT) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                history.getHistoryId(), userId, history.getFortuneType().name(), history.getInputData(),
+                history.getResultData(), history.getScore(), history.getAnalysis(),
+                Timestamp.valueOf(history.getCreatedAt()));
+    }
+
+    private List<Long> liveIds() {
+        return jdbcTemplate.queryForList("SELECT HISTORY_ID FROM FC_FORTUNE_HISTORY ORDER BY HISTORY_ID", Long.class);
+    }
+
+    private List<String> archiveFiles() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private static void writeSegment(Path file, long userId, FortuneHistory... histories) throws IOException {
+        try (HistorySegmentFile.Writer writer = HistorySegmentFile.create(file)) {
+            for (FortuneHistory history : histories) {
+                writer.append(userId, history);
+            }
+            writer.commit();
+        }
+    }
+
+    private static List<Long> ids(List<FortuneHistory> histories) {
+        return histories.stream().map(FortuneHistory::getHistoryId).toList();
+    }
+}
@@ -0,0 +1,80 @@
+package com.fatecompass.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 結果編碼測試：編碼後解碼須得到相同的指紋與整數，舊格式可讀，無效內容拒絕
+ */
+class FortuneResultCodeTest {
+
+    @Test
+    void roundTripsFingerprintAndValues() {
+        int[] values = {0, 1, 59, 127, 128, 255, 16_384, 1_000_000, Integer.MAX_VALUE};
+        String code = FortuneResultCode.encode(123_456_789, values);
+
+        assertTrue(code.startsWith(FortuneResultCode.PREFIX));
+        assertTrue(FortuneResultCode.isEncoded(code));
+        FortuneResultCode decoded = FortuneResultCode.decode(code);
+        assertEquals(123_456_789, decoded.getTemplateFingerprint());
+        assertArrayEquals(values, decoded.getValues());
+    }
+
+    @Test
+    void roundTripsEmptyValues() {
+        FortuneResultCode decoded = FortuneResultCode.decode(FortuneResultCode.encode(0, new int[0]));
+        assertEquals(0, decoded.getTemplateFingerprint());
+        assertEquals(0, decoded.getValues().length);
+    }
+
+    @Test
+    void smallValuesTakeOneByteEach() {
+        // 四柱序號、分數與模板序號都小於 128，每個值一個位元組
+        String code = FortuneResultCode.encode(5, new int[]{10, 20, 30, 40, 50, 60, 70, 80, 90, 100});
+        assertEquals(FortuneResultCode.PREFIX.length() + 15, code.length());
+    }
+
+    @Test
+    void decodesV1WithoutFingerprint() {
+        String v2 = FortuneResultCode.encode(3, new int[]{7, 200});
+        // 同樣的 varint 內容掛舊前綴：全部視為數值
+        String v1 = "@v1:" + v2.substring(FortuneResultCode.PREFIX.length());
+
+        assertTrue(FortuneResultCode.isEncoded(v1));
+        FortuneResultCode decoded = FortuneResultCode.decode(v1);
+        assertEquals(FortuneResultCode.NO_FINGERPRINT, decoded.getTemplateFingerprint());
+        assertArrayEquals(new int[]{3, 7, 200}, decoded.getValues());
+    }
+
+    @Test
+    void plainTextIsNotEncoded() {
+        assertFalse(FortuneResultCode.isEncoded(null));
+        assertFalse(FortuneResultCode.isEncoded(""));
+        assertFalse(FortuneResultCode.isEncoded("您的八字五行較為平衡"));
+        assertFalse(FortuneResultCode.isEncoded("@v3:AQID"));
+        assertThrows(IllegalArgumentException.class, () -> FortuneResultCode.decode("您的八字五行較為平衡"));
+    }
+
+    @Test
+    void rejectsInvalidCodes() {
+        // 非 base64url 字元
+        assertThrows(IllegalArgumentException.class, () -> FortuneResultCode.decode("@v2:A+/="));
+        // 最後一個 varint 仍帶延續位元
+        assertThrows(IllegalArgumentException.class, () -> FortuneResultCode.decode("@v2:AYA"));
+        // 超過五個位元組的 varint
+        assertThrows(IllegalArgumentException.class, () -> FortuneResultCode.decode("@v2:gICAgIAB"));
+        // v2 沒有指紋
+        assertThrows(IllegalArgumentException.class, () -> FortuneResultCode.decode("@v2:"));
+    }
+
+    @Test
+    void rejectsNegativeValues() {
+        assertThrows(IllegalArgumentException.class, () -> FortuneResultCode.encode(-1, new int[]{1}));
+        assertThrows(IllegalArgumentException.class, () -> FortuneResultCode.encode(1, new int[]{3, -2}));
+    }
+}
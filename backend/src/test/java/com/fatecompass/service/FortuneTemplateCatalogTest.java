@@ -0,0 +1,183 @@
+package com.fatecompass.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fatecompass.entity.FortuneTemplateVersion;
+import com.fatecompass.repository.FortuneTemplateVersionRepository;
+import com.fatecompass.service.FortuneTemplateCatalog.Category;
+import com.fatecompass.service.FortuneTemplateCatalog.Group;
+import com.fatecompass.service.FortuneTemplateCatalog.Templates;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 文案模板版本測試：模板修改後，舊指紋仍能取回當時的模板（本機或由其他節點經資料庫）
+ */
+class FortuneTemplateCatalogTest {
+
+    private static final String OLD_PERSONALITY = "性格特點：您天性聰穎，思維敏捷，富有創造力。為人正直善良，樂於助人。";
+    private static final String NEW_PERSONALITY = "性格特點：（修訂）您聰明伶俐。";
+
+    @TempDir
+    Path directory;
+
+    private Path templatesFile;
+
+    // 以插入順序模擬 FC_FORTUNE_TEMPLATE_VERSION
+    private final Map<Integer, FortuneTemplateVersion> table = new LinkedHashMap<>();
+    private final AtomicBoolean databaseDown = new AtomicBoolean();
+    private FortuneTemplateVersionRepository repository;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        templatesFile = directory.resolve("templates.json");
+        try (InputStream in = new ClassPathResource("fortune/templates.json").getInputStream()) {
+            Files.copy(in, templatesFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        repository = mock(FortuneTemplateVersionRepository.class);
+        when(repository.existsById(anyInt())).thenAnswer(call -> {
+            checkDatabase();
+            return table.containsKey(call.<Integer>getArgument(0));
+        });
+        when(repository.findById(anyInt())).thenAnswer(call -> {
+            checkDatabase();
+            return Optional.ofNullable(table.get(call.<Integer>getArgument(0)));
+        });
+        when(repository.save(any(FortuneTemplateVersion.class))).thenAnswer(call -> {
+            checkDatabase();
+            FortuneTemplateVersion version = call.getArgument(0);
+            table.putIfAbsent(version.getFingerprint(), version);
+            return version;
+        });
+        when(repository.findFirstByTemplateGroupOrderByCreatedAtAscFingerprintAsc(anyString())).thenAnswer(call -> {
+            checkDatabase();
+            return table.values().stream()
+                    .filter(version -> version.getTemplateGroup().equals(call.getArgument(0)))
+                    .findFirst();
+        });
+    }
+
+    @Test
+    void publishesEveryGroupOnLoad() {
+        FortuneTemplateCatalog catalog = newCatalog();
+
+        assertEquals(Group.values().length, table.size());
+        for (Group group : Group.values()) {
+            Templates current = catalog.current(group);
+            assertTrue(table.containsKey(current.getFingerprint()));
+            assertEquals(group.name(), table.get(current.getFingerprint()).getTemplateGroup());
+            assertSame(current, catalog.published(group, current.getFingerprint()).orElseThrow());
+        }
+    }
+
+    @Test
+    void oldFingerprintRendersOldTemplatesAfterEdit() throws IOException {
+        FortuneTemplateCatalog catalog = newCatalog();
+        int oldBazi = catalog.current(Group.BAZI).getFingerprint();
+        int oldDaily = catalog.current(Group.DAILY).getFingerprint();
+
+        editPersonalityTemplate();
+        catalog.reloadIfModified();
+
+        int newBazi = catalog.current(Group.BAZI).getFingerprint();
+        assertNotEquals(oldBazi, newBazi);
+        // 未修改的組指紋不變
+        assertEquals(oldDaily, catalog.current(Group.DAILY).getFingerprint());
+        assertEquals(OLD_PERSONALITY, render(catalog.published(Group.BAZI, oldBazi).orElseThrow()));
+        assertEquals(NEW_PERSONALITY, render(catalog.current(Group.BAZI)));
+        assertTrue(table.containsKey(newBazi));
+
+        // 其他節點只載入了新模板，舊版本由資料庫取回
+        FortuneTemplateCatalog otherNode = newCatalog();
+        assertEquals(newBazi, otherNode.current(Group.BAZI).getFingerprint());
+        Templates restored = otherNode.published(Group.BAZI, oldBazi).orElseThrow();
+        assertEquals(oldBazi, restored.getFingerprint());
+        assertEquals(OLD_PERSONALITY, render(restored));
+        assertEquals(OLD_PERSONALITY, render(otherNode.earliest(Group.BAZI)));
+    }
+
+    @Test
+    void unknownOrForeignFingerprintIsNotFound() {
+        FortuneTemplateCatalog catalog = newCatalog();
+        int nameFingerprint = catalog.current(Group.NAME).getFingerprint();
+
+        assertFalse(catalog.published(Group.BAZI, nameFingerprint).isPresent());
+        assertFalse(catalog.published(Group.BAZI, 12345).isPresent());
+    }
+
+    @Test
+    void publishRetriesAfterDatabaseOutage() throws IOException {
+        FortuneTemplateCatalog catalog = newCatalog();
+        int oldBazi = catalog.current(Group.BAZI).getFingerprint();
+
+        databaseDown.set(true);
+        editPersonalityTemplate();
+        catalog.reloadIfModified();
+        int newBazi = catalog.current(Group.BAZI).getFingerprint();
+        assertNotEquals(oldBazi, newBazi);
+        assertFalse(table.containsKey(newBazi));
+        // 本機產生的記錄仍可由本機渲染
+        assertEquals(NEW_PERSONALITY, render(catalog.published(Group.BAZI, newBazi).orElseThrow()));
+
+        databaseDown.set(false);
+        catalog.reloadIfModified();
+        assertTrue(table.containsKey(newBazi));
+    }
+
+    private FortuneTemplateCatalog newCatalog() {
+        FortuneTemplateCatalog catalog = new FortuneTemplateCatalog();
+        ReflectionTestUtils.setField(catalog, "templatesResource", new FileSystemResource(templatesFile));
+        ReflectionTestUtils.setField(catalog, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(catalog, "versionRepository", repository);
+        catalog.load();
+        return catalog;
+    }
+
+    private void editPersonalityTemplate() throws IOException {
+        String content = Files.readString(templatesFile, StandardCharsets.UTF_8);
+        assertTrue(content.contains(OLD_PERSONALITY));
+        Files.writeString(templatesFile, content.replace(OLD_PERSONALITY, NEW_PERSONALITY), StandardCharsets.UTF_8);
+        FileTime modified = Files.getLastModifiedTime(templatesFile);
+        Files.setLastModifiedTime(templatesFile, FileTime.fromMillis(modified.toMillis() + 60_000));
+    }
+
+    private static String render(Templates templates) {
+        StringBuilder out = new StringBuilder();
+        templates.append(out, Category.BAZI_PERSONALITY, 0, 0);
+        return out.toString();
+    }
+
+    private void checkDatabase() {
+        if (databaseDown.get()) {
+            throw new DataAccessResourceFailureException("資料庫無法連線");
+        }
+    }
+}
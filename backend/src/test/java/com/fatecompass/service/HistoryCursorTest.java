@@ -0,0 +1,65 @@
+package com.fatecompass.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分頁游標測試：編碼後解碼須得到相同位置，字串可直接放進網址，無效游標拒絕
+ */
+class HistoryCursorTest {
+
+    @Test
+    void roundTripsPosition() {
+        assertRoundTrip(LocalDateTime.parse("2024-03-15T10:20:30.123456789"), 42);
+        assertRoundTrip(LocalDateTime.parse("2024-03-15T10:20:30"), 1);
+        assertRoundTrip(LocalDateTime.parse("1969-12-31T23:59:59.999999999"), 0);
+        assertRoundTrip(LocalDateTime.parse("2099-01-01T00:00:00.000001"), Long.MAX_VALUE);
+    }
+
+    @Test
+    void encodesUrlSafely() {
+        for (int i = 0; i < 1_000; i++) {
+            String cursor = new HistoryCursor(LocalDateTime.parse("2024-01-01T00:00").plusNanos(i * 987_654_321L),
+                    i * 7_919L + 255).encode();
+            assertTrue(cursor.matches("[A-Za-z0-9_-]+"), cursor);
+        }
+    }
+
+    @Test
+    void rejectsInvalidCursors() {
+        String valid = new HistoryCursor(LocalDateTime.parse("2024-03-15T10:20:30"), 42).encode();
+        byte[] bytes = Base64.getUrlDecoder().decode(valid);
+
+        assertInvalid(null);
+        assertInvalid("");
+        assertInvalid("不是游標");
+        assertInvalid(valid + "AA");
+        assertInvalid(valid.substring(0, valid.length() - 2));
+
+        byte[] otherVersion = bytes.clone();
+        otherVersion[0] = 2;
+        assertInvalid(Base64.getUrlEncoder().withoutPadding().encodeToString(otherVersion));
+
+        // 奈秒欄位超出範圍
+        byte[] badNanos = bytes.clone();
+        badNanos[9] = 0x7F;
+        assertInvalid(Base64.getUrlEncoder().withoutPadding().encodeToString(badNanos));
+    }
+
+    private static void assertRoundTrip(LocalDateTime createdAt, long historyId) {
+        HistoryCursor decoded = HistoryCursor.decode(new HistoryCursor(createdAt, historyId).encode());
+        assertEquals(createdAt, decoded.getCreatedAt());
+        assertEquals(historyId, decoded.getHistoryId());
+    }
+
+    private static void assertInvalid(String cursor) {
+        RuntimeException e = assertThrows(RuntimeException.class, () -> HistoryCursor.decode(cursor));
+        assertEquals("無效的分頁游標", e.getMessage());
+    }
+}
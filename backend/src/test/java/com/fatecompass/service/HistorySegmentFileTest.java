@@ -0,0 +1,145 @@
+package com.fatecompass.service;
+
+import com.fatecompass.entity.FortuneHistory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 歸檔段檔格式測試：寫入後開啟讀回的內容須與原記錄完全相同
+ */
+class HistorySegmentFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsEveryField() throws IOException {
+        Path file = directory.resolve("history-2020-01.seg");
+        FortuneHistory newest = history(12, FortuneHistory.FortuneType.NAME, "2020-01-31T23:59:59.999999999",
+                "王小明", "@v2:AQID", 100, "分析\n第二行，含\"引號\"");
+        FortuneHistory nulls = history(11, FortuneHistory.FortuneType.DAILY, "2020-01-15T08:00:00.000001",
+                null, null, null, null);
+        FortuneHistory emptyText = history(3, FortuneHistory.FortuneType.ZODIAC, "2020-01-01T00:00",
+                "", "舊版全文 😀", 0, "");
+        FortuneHistory otherUser = history(7, FortuneHistory.FortuneType.BAZI, "2020-01-20T12:34:56.123456789",
+                "{\"birthDate\":\"1990-05-17\"}", "@v2:BAUG", 72, null);
+
+        try (HistorySegmentFile.Writer writer = HistorySegmentFile.create(file)) {
+            writer.append(3, newest);
+            writer.append(3, nulls);
+            writer.append(3, emptyText);
+            writer.append(9, otherUser);
+            writer.commit();
+        }
+
+        HistorySegmentFile segment = HistorySegmentFile.open(file);
+        assertEquals(4, segment.getTotalRows());
+
+        List<FortuneHistory> user3 = segment.read(3);
+        assertEquals(3, user3.size());
+        assertSameRecord(newest, user3.get(0));
+        assertSameRecord(nulls, user3.get(1));
+        assertSameRecord(emptyText, user3.get(2));
+        assertNull(user3.get(1).getScore());
+        assertNull(user3.get(1).getInputData());
+        assertEquals("", user3.get(2).getInputData());
+
+        List<FortuneHistory> user9 = segment.read(9);
+        assertEquals(1, user9.size());
+        assertSameRecord(otherUser, user9.get(0));
+        assertTrue(segment.read(5).isEmpty());
+        assertTrue(segment.read(10).isEmpty());
+
+        List<Long> userIds = new ArrayList<>();
+        List<Long> historyIds = new ArrayList<>();
+        segment.readAll((history, userId) -> {
+            userIds.add(userId);
+            historyIds.add(history.getHistoryId());
+        });
+        assertEquals(List.of(3L, 3L, 3L, 9L), userIds);
+        assertEquals(List.of(12L, 11L, 3L, 7L), historyIds);
+    }
+
+    @Test
+    void emptySegmentIsReadable() throws IOException {
+        Path file = directory.resolve("empty.seg");
+        try (HistorySegmentFile.Writer writer = HistorySegmentFile.create(file)) {
+            writer.commit();
+        }
+        HistorySegmentFile segment = HistorySegmentFile.open(file);
+        assertEquals(0, segment.getTotalRows());
+        assertTrue(segment.read(1).isEmpty());
+    }
+
+    @Test
+    void uncommittedWriterLeavesNothingBehind() throws IOException {
+        Path file = directory.resolve("history-2020-02.seg");
+        try (HistorySegmentFile.Writer writer = HistorySegmentFile.create(file)) {
+            writer.append(1, history(1, FortuneHistory.FortuneType.NAME, "2020-02-01T00:00", "a", "b", 50, null));
+        }
+        assertFalse(Files.exists(file));
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void rejectsUsersOutOfOrder() throws IOException {
+        try (HistorySegmentFile.Writer writer = HistorySegmentFile.create(directory.resolve("order.seg"))) {
+            writer.append(5, history(1, FortuneHistory.FortuneType.NAME, "2020-02-01T00:00", "a", "b", 50, null));
+            assertThrows(IOException.class, () ->
+                    writer.append(4, history(2, FortuneHistory.FortuneType.NAME, "2020-02-01T00:00", "a", "b", 50, null)));
+        }
+    }
+
+    @Test
+    void rejectsTruncatedFile() throws IOException {
+        Path file = directory.resolve("truncated.seg");
+        try (HistorySegmentFile.Writer writer = HistorySegmentFile.create(file)) {
+            writer.append(1, history(1, FortuneHistory.FortuneType.NAME, "2020-02-01T00:00", "a", "b", 50, null));
+            writer.commit();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertThrows(IOException.class, () -> HistorySegmentFile.open(file));
+    }
+
+    static FortuneHistory history(long id, FortuneHistory.FortuneType type, String createdAt,
+                                  String input, String result, Integer score, String analysis) {
+        FortuneHistory history = new FortuneHistory();
+        history.setHistoryId(id);
+        history.setFortuneType(type);
+        history.setCreatedAt(LocalDateTime.parse(createdAt));
+        history.setInputData(input);
+        history.setResultData(result);
+        history.setScore(score);
+        history.setAnalysis(analysis);
+        return history;
+    }
+
+    static void assertSameRecord(FortuneHistory expected, FortuneHistory actual) {
+        assertEquals(expected.getHistoryId(), actual.getHistoryId());
+        assertEquals(expected.getFortuneType(), actual.getFortuneType());
+        assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
+        assertEquals(expected.getInputData(), actual.getInputData());
+        assertEquals(expected.getResultData(), actual.getResultData());
+        assertEquals(expected.getScore(), actual.getScore());
+        assertEquals(expected.getAnalysis(), actual.getAnalysis());
+    }
+}
@@ -0,0 +1,77 @@
+package com.fatecompass.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 干支曆法邊界測試
+ * 交節時刻依壽星曆（東八區），表中進位到整分：
+ * 2024 立春 02-04 16:26:53、2024 驚蟄 03-05 10:22:31、1984 立春 02-04 23:18:5x
+ */
+class SexagenaryCalendarTest {
+
+    @Test
+    void yearAndMonthChangeAtLichun() {
+        assertEquals("癸卯 乙丑 戊戌 庚申", pillars("2024-02-04T16:26"));
+        assertEquals("甲辰 丙寅 戊戌 庚申", pillars("2024-02-04T16:27"));
+    }
+
+    @Test
+    void monthChangesAtJieWithinYear() {
+        assertEquals("甲辰 丙寅 戊辰 丁巳", pillars("2024-03-05T10:22"));
+        assertEquals("甲辰 丁卯 戊辰 丁巳", pillars("2024-03-05T10:23"));
+    }
+
+    @Test
+    void dayChangesAtZiHour() {
+        assertEquals("己卯 丙子 戊午 癸亥", pillars("2000-01-01T22:59"));
+        assertEquals("己卯 丙子 己未 甲子", pillars("2000-01-01T23:00"));
+        assertEquals("己卯 丙子 己未 甲子", pillars("2000-01-02T00:59"));
+    }
+
+    @Test
+    void lichunInsideLateZiHour() {
+        // 23:00 已換日，但年月仍以立春時刻為界
+        assertEquals("癸亥 乙丑 己巳 甲子", pillars("1984-02-04T23:18"));
+        assertEquals("甲子 丙寅 己巳 甲子", pillars("1984-02-04T23:19"));
+    }
+
+    @Test
+    void chartKeySeparatesJieHour() {
+        LocalDateTime before = LocalDateTime.parse("2024-02-04T16:26");
+        LocalDateTime after = LocalDateTime.parse("2024-02-04T16:27");
+        assertNotEquals(SexagenaryCalendar.chartKey(before), SexagenaryCalendar.chartKey(after));
+        assertEquals(SexagenaryCalendar.chartKey(after),
+                SexagenaryCalendar.chartKey(LocalDateTime.parse("2024-02-04T16:59")));
+    }
+
+    @Test
+    void supportedRange() {
+        assertEquals("己亥 丙子 甲戌 甲子", pillars("1900-01-01T00:00"));
+        assertEquals("庚申 戊子 戊申 壬子", pillars("2100-12-31T23:59"));
+        assertTrue(SexagenaryCalendar.supports(LocalDateTime.parse("2100-12-31T23:59")));
+        assertFalse(SexagenaryCalendar.supports(LocalDateTime.parse("1899-12-31T23:59")));
+        assertFalse(SexagenaryCalendar.supports(LocalDateTime.parse("2101-01-01T00:00")));
+        assertThrows(RuntimeException.class,
+                () -> SexagenaryCalendar.pillars(LocalDateTime.parse("1899-12-31T12:00")));
+    }
+
+    private static String pillars(String dateTime) {
+        int[] pillars = SexagenaryCalendar.pillars(LocalDateTime.parse(dateTime));
+        StringBuilder text = new StringBuilder();
+        for (int pillar : pillars) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(SexagenaryCalendar.name(pillar));
+        }
+        return text.toString();
+    }
+}
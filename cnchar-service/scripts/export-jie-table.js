@@ -0,0 +1,61 @@
+/**
+ * 匯出十二節交節時刻表
+ * 以 lunar-javascript（壽星曆 VSOP87 節氣）計算 1899~2101 年每年12個節的交節時刻，
+ * 輸出為後端 SexagenaryCalendar 使用的二進位格式：
+ *
+ *   int   magic   0x46434A51 ("FCJQ")
+ *   short version 1
+ *   short 起始年份
+ *   short 年數
+ *   每年12個 int：小寒、立春、驚蟄…大雪，自 1900-01-01 00:00（東八區）起算的分鐘數，進位到整分
+ *
+ * 用法: node scripts/export-jie-table.js ../backend/src/main/resources/calendar/jie-terms.bin
+ */
+const fs = require('fs');
+const { Solar } = require('lunar-javascript');
+
+const FIRST_YEAR = 1899;
+const LAST_YEAR = 2101;
+const JIE = ['小寒', '立春', '惊蛰', '清明', '立夏', '芒种', '小暑', '立秋', '白露', '寒露', '立冬', '大雪'];
+// 農曆年節氣表中屬於下一個農曆年的節以英文鍵表示
+const NEXT_KEYS = { XIAO_HAN: '小寒', LI_CHUN: '立春', DA_XUE: '大雪' };
+
+const EPOCH = Date.UTC(1900, 0, 1);
+
+const output = process.argv[2] || 'jie-terms.bin';
+const years = LAST_YEAR - FIRST_YEAR + 1;
+
+const buffer = Buffer.alloc(10 + years * 12 * 4);
+let offset = 0;
+offset = buffer.writeInt32BE(0x46434A51, offset);
+offset = buffer.writeInt16BE(1, offset);
+offset = buffer.writeInt16BE(FIRST_YEAR, offset);
+offset = buffer.writeInt16BE(years, offset);
+
+for (let year = FIRST_YEAR; year <= LAST_YEAR; year++) {
+  const found = {};
+  for (const month of [3, 9]) {
+    const table = Solar.fromYmd(year, month, 1).getLunar().getJieQiTable();
+    for (const key of Object.keys(table)) {
+      const name = NEXT_KEYS[key] || key;
+      const solar = table[key];
+      if (JIE.includes(name) && solar.getYear() === year) {
+        found[name] = solar;
+      }
+    }
+  }
+
+  for (const name of JIE) {
+    const solar = found[name];
+    if (!solar) {
+      throw new Error(`找不到 ${year} 年的${name}`);
+    }
+    // 以東八區牆上時間計算，與 UTC 換算無關
+    const millis = Date.UTC(solar.getYear(), solar.getMonth() - 1, solar.getDay(),
+      solar.getHour(), solar.getMinute(), solar.getSecond()) - EPOCH;
+    offset = buffer.writeInt32BE(Math.ceil(millis / 60000), offset);
+  }
+}
+
+fs.writeFileSync(output, buffer);
+console.log(`已匯出 ${FIRST_YEAR}~${LAST_YEAR} 年節氣表: ${output}`);
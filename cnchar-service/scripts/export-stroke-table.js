@@ -0,0 +1,51 @@
+/**
+ * 匯出繁體中文筆劃表
+ * 以cnchar + cnchar-trad計算CJK區塊內每個字的筆劃數，
+ * 輸出為後端 StrokeDictionary 使用的二進位格式：
+ *
+ *   int   magic   0x46435354 ("FCST")
+ *   short version 1
+ *   short 區塊數
+ *   每個區塊: int 起始碼位, int 長度, byte[長度] 筆劃數 (0 表示未知)
+ *
+ * 用法: node scripts/export-stroke-table.js ../backend/src/main/resources/strokes/cjk-strokes.bin
+ */
+const fs = require('fs');
+const cnchar = require('cnchar');
+require('cnchar-trad'); // 載入繁體字支援
+
+const BLOCKS = [
+  [0x3400, 0x4DBF], // CJK擴展A
+  [0x4E00, 0x9FFF], // CJK統一漢字
+  [0xF900, 0xFAFF]  // CJK相容漢字
+];
+
+const output = process.argv[2] || 'cjk-strokes.bin';
+
+let size = 8;
+for (const [start, end] of BLOCKS) {
+  size += 8 + (end - start + 1);
+}
+
+const buffer = Buffer.alloc(size);
+let offset = 0;
+offset = buffer.writeInt32BE(0x46435354, offset);
+offset = buffer.writeInt16BE(1, offset);
+offset = buffer.writeInt16BE(BLOCKS.length, offset);
+
+let known = 0;
+for (const [start, end] of BLOCKS) {
+  offset = buffer.writeInt32BE(start, offset);
+  offset = buffer.writeInt32BE(end - start + 1, offset);
+  for (let cp = start; cp <= end; cp++) {
+    const strokes = cnchar.stroke(String.fromCodePoint(cp));
+    const value = Number.isInteger(strokes) && strokes > 0 && strokes < 128 ? strokes : 0;
+    if (value > 0) {
+      known++;
+    }
+    offset = buffer.writeInt8(value, offset);
+  }
+}
+
+fs.writeFileSync(output, buffer);
+console.log(`✅ 已匯出筆劃表: ${output} (${known} 個字)`);
@@ -5,6 +5,7 @@
 -- =============================================
 
 -- 清空現有數據 (謹慎執行)
+-- DELETE FROM FC_USER_FORTUNE_STATS;
 -- DELETE FROM FC_FORTUNE_HISTORY;
 -- DELETE FROM FC_USERS;
 -- COMMIT;
@@ -215,6 +216,33 @@ VALUES (
     TIMESTAMP '2024-01-12 14:20:00'
 );
 
+-- 回填用戶算命統計（可重複執行：以歷史記錄重新計算並覆蓋計數列，也用於既有資料庫升級）
+MERGE INTO FC_USER_FORTUNE_STATS s
+USING (
+    SELECT USER_ID,
+           SUM(CASE WHEN FORTUNE_TYPE = 'BAZI' THEN 1 ELSE 0 END) AS BAZI_COUNT,
+           SUM(CASE WHEN FORTUNE_TYPE = 'NAME' THEN 1 ELSE 0 END) AS NAME_COUNT,
+           SUM(CASE WHEN FORTUNE_TYPE = 'DAILY' THEN 1 ELSE 0 END) AS DAILY_COUNT,
+           SUM(CASE WHEN FORTUNE_TYPE = 'ZODIAC' THEN 1 ELSE 0 END) AS ZODIAC_COUNT,
+           COUNT(*) AS TOTAL_COUNT,
+           NVL(SUM(SCORE), 0) AS SCORE_SUM,
+           MAX(CREATED_AT) AS LAST_FORTUNE_AT
+    FROM FC_FORTUNE_HISTORY
+    GROUP BY USER_ID
+) d
+ON (s.USER_ID = d.USER_ID)
+WHEN MATCHED THEN UPDATE SET
+    s.BAZI_COUNT = d.BAZI_COUNT,
+    s.NAME_COUNT = d.NAME_COUNT,
+    s.DAILY_COUNT = d.DAILY_COUNT,
+    s.ZODIAC_COUNT = d.ZODIAC_COUNT,
+    s.TOTAL_COUNT = d.TOTAL_COUNT,
+    s.SCORE_SUM = d.SCORE_SUM,
+    s.LAST_FORTUNE_AT = d.LAST_FORTUNE_AT,
+    s.UPDATED_AT = CURRENT_TIMESTAMP
+WHEN NOT MATCHED THEN INSERT (USER_ID, BAZI_COUNT, NAME_COUNT, DAILY_COUNT, ZODIAC_COUNT, TOTAL_COUNT, SCORE_SUM, LAST_FORTUNE_AT, UPDATED_AT)
+VALUES (d.USER_ID, d.BAZI_COUNT, d.NAME_COUNT, d.DAILY_COUNT, d.ZODIAC_COUNT, d.TOTAL_COUNT, d.SCORE_SUM, d.LAST_FORTUNE_AT, CURRENT_TIMESTAMP);
+
 -- =============================================
 -- 3. 更新序列到正確的值
 -- =============================================
@@ -228,14 +256,14 @@ BEGIN
     SELECT NVL(MAX(USER_ID), 0) INTO v_max_user_id FROM FC_USERS;
     SELECT NVL(MAX(HISTORY_ID), 0) INTO v_max_history_id FROM FC_FORTUNE_HISTORY;
     
-    -- 調整序列
+    -- 調整序列，之後恢復為區塊遞增（與應用程式的 allocationSize 相同）
     EXECUTE IMMEDIATE 'ALTER SEQUENCE FC_USER_SEQ INCREMENT BY ' || (v_max_user_id + 1 - FC_USER_SEQ.NEXTVAL);
     SELECT FC_USER_SEQ.NEXTVAL INTO v_max_user_id FROM DUAL;
-    EXECUTE IMMEDIATE 'ALTER SEQUENCE FC_USER_SEQ INCREMENT BY 1';
+    EXECUTE IMMEDIATE 'ALTER SEQUENCE FC_USER_SEQ INCREMENT BY 20';
     
     EXECUTE IMMEDIATE 'ALTER SEQUENCE FC_FORTUNE_SEQ INCREMENT BY ' || (v_max_history_id + 1 - FC_FORTUNE_SEQ.NEXTVAL);
     SELECT FC_FORTUNE_SEQ.NEXTVAL INTO v_max_history_id FROM DUAL;
-    EXECUTE IMMEDIATE 'ALTER SEQUENCE FC_FORTUNE_SEQ INCREMENT BY 1';
+    EXECUTE IMMEDIATE 'ALTER SEQUENCE FC_FORTUNE_SEQ INCREMENT BY 50';
 END;
 /
 
@@ -12,20 +12,48 @@
 -- 1. 創建序列 (Sequences)
 -- =============================================
 
+-- 序列以區塊方式配號：每次 NEXTVAL 遞增一個區塊，應用程式在記憶體中發放區塊內的ID
+-- （Hibernate pooled，見 User / FortuneHistory 的 ID_ALLOCATION_SIZE，兩邊必須一致）
+-- 既有資料庫升級：舊版的 USER_ID 由 FC_ID_GENERATOR 表產生、HISTORY_ID 由自動遞增欄位產生，
+-- 序列可能落後於現有的最大ID，須先把序列推過 MAX(ID) 一個區塊再改為區塊遞增，
+-- 否則註冊與寫入歷史會主鍵衝突（做法同 data.sql 第 3 節）：
+--   DECLARE
+--       v_max  NUMBER;
+--       v_next NUMBER;
+--   BEGIN
+--       SELECT NVL(MAX(USER_ID), 0) INTO v_max FROM FC_USERS;
+--       SELECT FC_USER_SEQ.NEXTVAL INTO v_next FROM DUAL;
+--       IF v_next < v_max + 20 THEN
+--           EXECUTE IMMEDIATE 'ALTER SEQUENCE FC_USER_SEQ INCREMENT BY ' || (v_max + 20 - v_next);
+--           SELECT FC_USER_SEQ.NEXTVAL INTO v_next FROM DUAL;
+--       END IF;
+--       EXECUTE IMMEDIATE 'ALTER SEQUENCE FC_USER_SEQ INCREMENT BY 20 CACHE 20';
+--
+--       SELECT NVL(MAX(HISTORY_ID), 0) INTO v_max FROM FC_FORTUNE_HISTORY;
+--       SELECT FC_FORTUNE_SEQ.NEXTVAL INTO v_next FROM DUAL;
+--       IF v_next < v_max + 50 THEN
+--           EXECUTE IMMEDIATE 'ALTER SEQUENCE FC_FORTUNE_SEQ INCREMENT BY ' || (v_max + 50 - v_next);
+--           SELECT FC_FORTUNE_SEQ.NEXTVAL INTO v_next FROM DUAL;
+--       END IF;
+--       EXECUTE IMMEDIATE 'ALTER SEQUENCE FC_FORTUNE_SEQ INCREMENT BY 50 CACHE 20';
+--   END;
+--   /
+-- 升級期間應用程式須停機，避免舊版仍以 FC_ID_GENERATOR 配號。
+
 -- 用戶ID序列
 CREATE SEQUENCE FC_USER_SEQ
     START WITH 1
-    INCREMENT BY 1
+    INCREMENT BY 20
     MAXVALUE 999999999
-    NOCACHE
+    CACHE 20
     NOCYCLE;
 
 -- 算命歷史ID序列
 CREATE SEQUENCE FC_FORTUNE_SEQ
     START WITH 1
-    INCREMENT BY 1
+    INCREMENT BY 50
     MAXVALUE 999999999
-    NOCACHE
+    CACHE 20
     NOCYCLE;
 
 -- =============================================
@@ -54,21 +82,75 @@ CREATE TABLE FC_USERS (
 );
 
 -- 算命歷史記錄表
+-- 依 CREATED_AT 按月區間分區（INTERVAL），新月份的分區由資料庫在第一筆寫入時自動建立；
+-- 保留期清理以整個分區 DROP（見 SP_CLEANUP_OLD_DATA），不產生大量 undo/redo，
+-- 以日期範圍查詢（findByUserIdAndDateRange、VW_DAILY_FORTUNE_STATS）只掃描相關月份。
+-- 分區鍵不可為空，CREATED_AT 因此為 NOT NULL。
+-- 既有資料庫升級（12.2 以上可線上轉換）：
+--   ALTER TABLE FC_FORTUNE_HISTORY MODIFY CREATED_AT NOT NULL;
+--   ALTER TABLE FC_FORTUNE_HISTORY MODIFY
+--       PARTITION BY RANGE (CREATED_AT) INTERVAL (NUMTOYMINTERVAL(1, 'MONTH'))
+--       (PARTITION P_FC_FORTUNE_INITIAL VALUES LESS THAN (TIMESTAMP '2024-01-01 00:00:00'))
+--       ONLINE UPDATE INDEXES (
+--           IDX_FC_FORTUNE_USER LOCAL, IDX_FC_FORTUNE_TYPE LOCAL, IDX_FC_FORTUNE_CREATED LOCAL,
+--           IDX_FC_FORTUNE_USER_TYPE LOCAL, IDX_FC_FORTUNE_USER_CREATED LOCAL);
 CREATE TABLE FC_FORTUNE_HISTORY (
     HISTORY_ID    NUMBER(10)     NOT NULL,
     USER_ID       NUMBER(10)     NOT NULL,
     FORTUNE_TYPE  VARCHAR2(20)   NOT NULL,
     INPUT_DATA    VARCHAR2(1000),
-    RESULT_DATA   CLOB,
+    RESULT_DATA   CLOB,          -- 新記錄為數十位元組的精簡編碼，依預設 ENABLE STORAGE IN ROW 直接存於列內，不另佔LOB區段
     SCORE         NUMBER(3),
     ANALYSIS      CLOB,
-    CREATED_AT    TIMESTAMP      DEFAULT CURRENT_TIMESTAMP,
+    CREATED_AT    TIMESTAMP      DEFAULT CURRENT_TIMESTAMP NOT NULL,
     CONSTRAINT PK_FC_FORTUNE_HISTORY PRIMARY KEY (HISTORY_ID),
     CONSTRAINT FK_FC_FORTUNE_USER FOREIGN KEY (USER_ID) REFERENCES FC_USERS (USER_ID),
     CONSTRAINT CK_FC_FORTUNE_TYPE CHECK (FORTUNE_TYPE IN ('BAZI', 'NAME', 'DAILY', 'ZODIAC')),
     CONSTRAINT CK_FC_FORTUNE_SCORE CHECK (SCORE BETWEEN 0 AND 100)
+)
+PARTITION BY RANGE (CREATED_AT) INTERVAL (NUMTOYMINTERVAL(1, 'MONTH'))
+(
+    -- 初始範圍分區（2024 年以前的資料）；之後每月一個自動分區
+    PARTITION P_FC_FORTUNE_INITIAL VALUES LESS THAN (TIMESTAMP '2024-01-01 00:00:00')
 );
 
+-- 跨節點共享筆劃緩存表（各後端節點從cnchar學到的字→筆劃）
+CREATE TABLE FC_STROKE_CACHE (
+    CHAR_CODE     NUMBER(7)      NOT NULL,
+    STROKES       NUMBER(3)      NOT NULL,
+    CREATED_AT    TIMESTAMP      DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT PK_FC_STROKE_CACHE PRIMARY KEY (CHAR_CODE)
+) ORGANIZATION INDEX;
+
+-- 已發布文案模板版本表（每個模板組版本一列，以內容指紋為主鍵，只新增不修改）
+-- 算命歷史的精簡編碼只保存模板序號與指紋，讀取時依指紋取回當時的模板渲染；
+-- 後端載入或重新載入模板時自動寫入，既有資料庫建表即可，不需回填
+CREATE TABLE FC_FORTUNE_TEMPLATE_VERSION (
+    FINGERPRINT    NUMBER(10)     NOT NULL,
+    TEMPLATE_GROUP VARCHAR2(20)   NOT NULL,
+    TEMPLATES      CLOB           NOT NULL,
+    CREATED_AT     TIMESTAMP      DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT PK_FC_FORTUNE_TEMPLATE_VERSION PRIMARY KEY (FINGERPRINT),
+    CONSTRAINT CK_FC_TEMPLATE_GROUP CHECK (TEMPLATE_GROUP IN ('BAZI', 'NAME', 'DAILY'))
+);
+
+-- 用戶算命統計表（每位用戶一列累計計數，由後端寫入歷史的同一交易以 MERGE 累加）
+-- 統計API與 FN_GET_USER_LEVEL 以主鍵讀取此表，不必掃描歷史記錄；
+-- 計數為累計值，SP_CLEANUP_OLD_DATA 清理舊記錄後不會遞減。既有資料庫建表後以 data.sql 的回填語句補齊
+CREATE TABLE FC_USER_FORTUNE_STATS (
+    USER_ID         NUMBER(10)     NOT NULL,
+    BAZI_COUNT      NUMBER(10)     DEFAULT 0 NOT NULL,
+    NAME_COUNT      NUMBER(10)     DEFAULT 0 NOT NULL,
+    DAILY_COUNT     NUMBER(10)     DEFAULT 0 NOT NULL,
+    ZODIAC_COUNT    NUMBER(10)     DEFAULT 0 NOT NULL,
+    TOTAL_COUNT     NUMBER(10)     DEFAULT 0 NOT NULL,
+    SCORE_SUM       NUMBER(12)     DEFAULT 0 NOT NULL,
+    LAST_FORTUNE_AT TIMESTAMP,
+    UPDATED_AT      TIMESTAMP      DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT PK_FC_USER_FORTUNE_STATS PRIMARY KEY (USER_ID),
+    CONSTRAINT FK_FC_STATS_USER FOREIGN KEY (USER_ID) REFERENCES FC_USERS (USER_ID)
+) ORGANIZATION INDEX;
+
 -- =============================================
 -- 3. 創建索引 (Indexes)
 -- =============================================
@@ -79,12 +161,16 @@ CREATE INDEX IDX_FC_USERS_EMAIL ON FC_USERS (EMAIL);
 CREATE INDEX IDX_FC_USERS_CREATED ON FC_USERS (CREATED_AT);
 CREATE INDEX IDX_FC_USERS_ACTIVE ON FC_USERS (IS_ACTIVE);
 
--- 算命歷史表索引
-CREATE INDEX IDX_FC_FORTUNE_USER ON FC_FORTUNE_HISTORY (USER_ID);
-CREATE INDEX IDX_FC_FORTUNE_TYPE ON FC_FORTUNE_HISTORY (FORTUNE_TYPE);
-CREATE INDEX IDX_FC_FORTUNE_CREATED ON FC_FORTUNE_HISTORY (CREATED_AT);
-CREATE INDEX IDX_FC_FORTUNE_USER_TYPE ON FC_FORTUNE_HISTORY (USER_ID, FORTUNE_TYPE);
-CREATE INDEX IDX_FC_FORTUNE_USER_CREATED ON FC_FORTUNE_HISTORY (USER_ID, CREATED_AT);
+-- 算命歷史表索引：一律 LOCAL，隨分區一起建立與刪除，刪除舊分區時不必重建；
+-- 主鍵（HISTORY_ID 不含分區鍵）為全域索引，刪除分區時以 UPDATE GLOBAL INDEXES 維護
+CREATE INDEX IDX_FC_FORTUNE_USER ON FC_FORTUNE_HISTORY (USER_ID) LOCAL;
+CREATE INDEX IDX_FC_FORTUNE_TYPE ON FC_FORTUNE_HISTORY (FORTUNE_TYPE) LOCAL;
+CREATE INDEX IDX_FC_FORTUNE_CREATED ON FC_FORTUNE_HISTORY (CREATED_AT) LOCAL;
+CREATE INDEX IDX_FC_FORTUNE_USER_TYPE ON FC_FORTUNE_HISTORY (USER_ID, FORTUNE_TYPE) LOCAL;
+-- 歷史分頁依 (CREATED_AT, HISTORY_ID) 由新到舊 keyset 查詢，索引包含 HISTORY_ID 可直接定位與排序；
+-- 再附上列表摘要所需的 FORTUNE_TYPE、SCORE，列表與統計查詢只讀索引、不回表；
+-- 依 CREATED_AT 由新到舊排序時逐月分區倒序讀取，取滿一頁即停止，不必探查所有月份
+CREATE INDEX IDX_FC_FORTUNE_USER_CREATED ON FC_FORTUNE_HISTORY (USER_ID, CREATED_AT, HISTORY_ID, FORTUNE_TYPE, SCORE) LOCAL;
 
 -- =============================================
 -- 4. 創建觸發器 (Triggers)
@@ -99,7 +185,7 @@ BEGIN
 END;
 /
 
--- 用戶表自動ID觸發器
+-- 用戶表自動ID觸發器（僅供未指定ID的手動SQL使用，應用程式寫入時已帶ID）
 CREATE OR REPLACE TRIGGER TRG_FC_USERS_ID
     BEFORE INSERT ON FC_USERS
     FOR EACH ROW
@@ -110,7 +196,7 @@ BEGIN
 END;
 /
 
--- 算命歷史表自動ID觸發器
+-- 算命歷史表自動ID觸發器（同上）
 CREATE OR REPLACE TRIGGER TRG_FC_FORTUNE_ID
     BEFORE INSERT ON FC_FORTUNE_HISTORY
     FOR EACH ROW
@@ -160,7 +246,7 @@ SELECT
     COUNT(DISTINCT USER_ID) AS UNIQUE_USERS,
     ROUND(AVG(SCORE), 2) AS AVG_SCORE
 FROM FC_FORTUNE_HISTORY
-WHERE CREATED_AT >= TRUNC(SYSDATE) - 30  -- 最近30天
+WHERE CREATED_AT >= CAST(TRUNC(SYSDATE) - 30 AS TIMESTAMP)  -- 最近30天；條件直接作用於分區鍵，只掃描最近一兩個月的分區
 GROUP BY TRUNC(CREATED_AT)
 ORDER BY FORTUNE_DATE DESC;
 
@@ -194,21 +280,35 @@ END SP_GET_USER_FORTUNE_HISTORY;
 CREATE OR REPLACE PROCEDURE SP_CLEANUP_OLD_DATA(
     p_days_to_keep IN NUMBER DEFAULT 365
 ) AS
-    v_count NUMBER;
+    v_cutoff     TIMESTAMP := CAST(TRUNC(SYSDATE) - p_days_to_keep AS TIMESTAMP);
+    v_high_value TIMESTAMP;
+    v_count      NUMBER := 0;
+    -- 區間分區表最後一個範圍分區（初始分區）不可刪除
+    e_last_range_partition EXCEPTION;
+    PRAGMA EXCEPTION_INIT(e_last_range_partition, -14758);
 BEGIN
-    -- 刪除超過指定天數的算命記錄
-    DELETE FROM FC_FORTUNE_HISTORY 
-    WHERE CREATED_AT < SYSDATE - p_days_to_keep;
-    
-    v_count := SQL%ROWCOUNT;
-    
-    DBMS_OUTPUT.PUT_LINE('清理了 ' || v_count || ' 條舊的算命記錄');
+    -- 以分區為單位清理超過保留天數的算命記錄：整個月份都早於期限的分區直接刪除，
+    -- 只是字典操作，不逐筆刪除、不鎖表；跨越期限的月份保留到下個月再清理
+    FOR p IN (SELECT PARTITION_NAME, HIGH_VALUE
+              FROM USER_TAB_PARTITIONS
+              WHERE TABLE_NAME = 'FC_FORTUNE_HISTORY'
+              ORDER BY PARTITION_POSITION) LOOP
+        -- HIGH_VALUE 為 LONG 型別的上界運算式（TIMESTAMP' ...'），以動態SQL求值
+        EXECUTE IMMEDIATE 'SELECT ' || p.HIGH_VALUE || ' FROM DUAL' INTO v_high_value;
+        EXIT WHEN v_high_value > v_cutoff;
+        
+        BEGIN
+            EXECUTE IMMEDIATE 'ALTER TABLE FC_FORTUNE_HISTORY DROP PARTITION "'
+                || p.PARTITION_NAME || '" UPDATE GLOBAL INDEXES';
+        EXCEPTION
+            WHEN e_last_range_partition THEN
+                EXECUTE IMMEDIATE 'ALTER TABLE FC_FORTUNE_HISTORY TRUNCATE PARTITION "'
+                    || p.PARTITION_NAME || '" UPDATE GLOBAL INDEXES';
+        END;
+        v_count := v_count + 1;
+    END LOOP;
     
-    COMMIT;
-EXCEPTION
-    WHEN OTHERS THEN
-        ROLLBACK;
-        RAISE;
+    DBMS_OUTPUT.PUT_LINE('清理了 ' || v_count || ' 個舊的算命記錄分區');
 END SP_CLEANUP_OLD_DATA;
 /
 
@@ -223,8 +323,9 @@ CREATE OR REPLACE FUNCTION FN_GET_USER_LEVEL(
     v_count NUMBER;
     v_level VARCHAR2(20);
 BEGIN
-    SELECT COUNT(*) INTO v_count
-    FROM FC_FORTUNE_HISTORY
+    -- 讀取用戶統計計數列（主鍵查詢），尚無記錄的用戶視為0次
+    SELECT NVL(MAX(TOTAL_COUNT), 0) INTO v_count
+    FROM FC_USER_FORTUNE_STATS
     WHERE USER_ID = p_user_id;
     
     CASE 
@@ -269,10 +370,32 @@ COMMENT ON COLUMN FC_FORTUNE_HISTORY.HISTORY_ID IS '記錄唯一標識';
 COMMENT ON COLUMN FC_FORTUNE_HISTORY.USER_ID IS '用戶ID';
 COMMENT ON COLUMN FC_FORTUNE_HISTORY.FORTUNE_TYPE IS '算命類型：BAZI-八字，NAME-姓名，DAILY-每日，ZODIAC-生肖';
 COMMENT ON COLUMN FC_FORTUNE_HISTORY.INPUT_DATA IS '輸入數據';
-COMMENT ON COLUMN FC_FORTUNE_HISTORY.RESULT_DATA IS '算命結果詳細數據';
+COMMENT ON COLUMN FC_FORTUNE_HISTORY.RESULT_DATA IS '算命結果：@v2:（含模板指紋，見 FC_FORTUNE_TEMPLATE_VERSION）或 @v1: 開頭為精簡編碼（模板序號與參數，讀取時渲染），其餘為舊版全文';
 COMMENT ON COLUMN FC_FORTUNE_HISTORY.SCORE IS '算命評分(0-100)';
 COMMENT ON COLUMN FC_FORTUNE_HISTORY.ANALYSIS IS '算命分析結果';
 
+COMMENT ON TABLE FC_USER_FORTUNE_STATS IS '用戶算命統計表（累計計數）';
+COMMENT ON COLUMN FC_USER_FORTUNE_STATS.USER_ID IS '用戶ID';
+COMMENT ON COLUMN FC_USER_FORTUNE_STATS.BAZI_COUNT IS '生辰八字次數';
+COMMENT ON COLUMN FC_USER_FORTUNE_STATS.NAME_COUNT IS '姓名算命次數';
+COMMENT ON COLUMN FC_USER_FORTUNE_STATS.DAILY_COUNT IS '每日運勢次數';
+COMMENT ON COLUMN FC_USER_FORTUNE_STATS.ZODIAC_COUNT IS '生肖運勢次數';
+COMMENT ON COLUMN FC_USER_FORTUNE_STATS.TOTAL_COUNT IS '算命總次數';
+COMMENT ON COLUMN FC_USER_FORTUNE_STATS.SCORE_SUM IS '評分總和（平均 = SCORE_SUM / TOTAL_COUNT）';
+COMMENT ON COLUMN FC_USER_FORTUNE_STATS.LAST_FORTUNE_AT IS '最近一次算命時間';
+COMMENT ON COLUMN FC_USER_FORTUNE_STATS.UPDATED_AT IS '計數更新時間';
+
+COMMENT ON TABLE FC_STROKE_CACHE IS '跨節點共享筆劃緩存表';
+COMMENT ON COLUMN FC_STROKE_CACHE.CHAR_CODE IS '字的Unicode碼位';
+COMMENT ON COLUMN FC_STROKE_CACHE.STROKES IS '筆劃數';
+COMMENT ON COLUMN FC_STROKE_CACHE.CREATED_AT IS '寫入時間';
+
+COMMENT ON TABLE FC_FORTUNE_TEMPLATE_VERSION IS '已發布文案模板版本表';
+COMMENT ON COLUMN FC_FORTUNE_TEMPLATE_VERSION.FINGERPRINT IS '模板組內容指紋（與結果編碼中的指紋相同）';
+COMMENT ON COLUMN FC_FORTUNE_TEMPLATE_VERSION.TEMPLATE_GROUP IS '模板組：BAZI-八字，NAME-姓名，DAILY-每日';
+COMMENT ON COLUMN FC_FORTUNE_TEMPLATE_VERSION.TEMPLATES IS '該組模板內容（與 fortune/templates.json 同格式）';
+COMMENT ON COLUMN FC_FORTUNE_TEMPLATE_VERSION.CREATED_AT IS '首次發布時間';
+
 -- =============================================
 -- 腳本執行完成
 -- =============================================
@@ -281,7 +404,7 @@ PROMPT '==========================================';
 PROMPT '算命網站資料庫結構創建完成！';
 PROMPT '已創建的對象：';
 PROMPT '- 2個序列 (FC_USER_SEQ, FC_FORTUNE_SEQ)';
-PROMPT '- 2個表 (FC_USERS, FC_FORTUNE_HISTORY)';
+PROMPT '- 5個表 (FC_USERS, FC_FORTUNE_HISTORY, FC_STROKE_CACHE, FC_FORTUNE_TEMPLATE_VERSION, FC_USER_FORTUNE_STATS)';
 PROMPT '- 8個索引';
 PROMPT '- 3個觸發器';
 PROMPT '- 3個視圖';